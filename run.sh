@@ -14,11 +14,11 @@ JVM_OPTIONS="\
 
 APP_NAME=statistics-svc
 JAR=$APP_NAME.jar
-SPRING_PROFILES=prod
+SPRING_PROFILES=${SPRING_PROFILES:-prod}
 
 java \
   -Dserver.port=8080\
-  -Dmanagement.contextPath=/management\
+  -Dmanagement.endpoints.web.base-path=/management\
   -Dspring.profiles.active=${SPRING_PROFILES}\
   -Dlogging.application.name=${APP_NAME}\
   -Dfile.encoding=UTF-8\
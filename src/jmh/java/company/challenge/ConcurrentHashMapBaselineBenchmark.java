@@ -0,0 +1,88 @@
+package company.challenge;
+
+import company.challenge.domain.Statistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Optional.ofNullable;
+
+/**
+ * The former ConcurrentHashMap reduce/compute storage, kept as a baseline
+ * for {@link StatisticsReadBenchmark} and {@link StatisticsWriteBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentHashMapBaselineBenchmark {
+
+    private static final int PARALLELISM_THRESHOLD = 20;
+
+    @Param({"1", "10", "60"})
+    private int buckets;
+
+    private ConcurrentHashMap<Long, Statistics> cache;
+
+    private long now;
+
+    @Setup
+    public void setup() {
+        cache = new ConcurrentHashMap<>(60);
+        now = 1521374400000L;
+        for (int i = 0; i < buckets; i++) {
+            save(now - 500 - i * 1000L, 1000);
+        }
+    }
+
+    @Benchmark
+    public Statistics getStatistics() {
+        long windowStartTimestamp = now - 60_000;
+        return ofNullable(cache.reduce(PARALLELISM_THRESHOLD,
+            (k, v) -> k >= windowStartTimestamp ? v : new Statistics(),
+            ConcurrentHashMapBaselineBenchmark::combine))
+            .orElse(new Statistics());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void save4Threads() {
+        save(now - 500, 1000);
+    }
+
+    private void save(long timestamp, double amount) {
+        cache.compute(TimeUtil.alignMillisToSeconds(timestamp), (k, current) -> {
+            Statistics result = new Statistics();
+            result.setSum((current == null ? 0 : current.getSum()) + amount);
+            result.setCount((current == null ? 0 : current.getCount()) + 1);
+            result.setMax(current == null ? amount : Math.max(current.getMax(), amount));
+            result.setMin(current == null ? amount : Math.min(current.getMin(), amount));
+            result.setAvg(result.getSum() / result.getCount());
+            return result;
+        });
+    }
+
+    private static Statistics combine(Statistics total, Statistics current) {
+        Statistics result = new Statistics();
+        result.setSum(total.getSum() + current.getSum());
+        result.setCount(total.getCount() + current.getCount());
+        result.setMax(Math.max(total.getMax(), current.getMax()));
+        result.setMin(Math.min(total.getMin(), current.getMin()));
+        result.setAvg(result.getCount() == 0 ? 0 : result.getSum() / result.getCount());
+        return result;
+    }
+}
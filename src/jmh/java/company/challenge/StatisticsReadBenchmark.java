@@ -0,0 +1,84 @@
+package company.challenge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import company.challenge.dto.StatisticsDTO;
+import company.challenge.store.SlidingWindowStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.Instant.parse;
+import static java.time.ZoneOffset.UTC;
+
+/**
+ * Cost of {@link StatisticsService#getStatistics} and {@link StatisticsService#cleanCache}
+ * depending on the number of filled buckets, alone and next to concurrent writers.
+ * {@link StatisticsService#getEncodedStatistics} is what GET /statistics serves, JSON included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsReadBenchmark {
+
+    @Param({"1", "10", "60"})
+    private int buckets;
+
+    private StatisticsService service;
+
+    private long timestamp;
+
+    @Setup
+    public void setup() {
+        Clock clock = Clock.fixed(parse("2018-03-18T12:00:00Z"), UTC);
+        service = new StatisticsService(clock, new SlidingWindowStore(60), new ObjectMapper());
+        timestamp = clock.millis() - 500;
+        for (int i = 0; i < buckets; i++) {
+            service.save(1000, timestamp - i * 1000L);
+        }
+    }
+
+    @Benchmark
+    public StatisticsDTO getStatistics() {
+        return service.getStatistics();
+    }
+
+    @Benchmark
+    public byte[] getEncodedStatistics() {
+        return service.getEncodedStatistics().getJson();
+    }
+
+    @Benchmark
+    public int cleanCache() {
+        return service.cleanCache();
+    }
+
+    @Benchmark
+    @Group("readWithWriters")
+    @GroupThreads(1)
+    public StatisticsDTO readWithWritersGet() {
+        return service.getStatistics();
+    }
+
+    @Benchmark
+    @Group("readWithWriters")
+    @GroupThreads(4)
+    public void readWithWritersSave() {
+        service.save(1000, timestamp);
+    }
+}
@@ -0,0 +1,107 @@
+package company.challenge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import company.challenge.ingest.AmountScale;
+import company.challenge.journal.TransactionJournal;
+import company.challenge.store.SlidingWindowStore;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.time.Instant.parse;
+import static java.time.ZoneOffset.UTC;
+
+/**
+ * Throughput of {@link StatisticsService#save} with all writers hitting the current second,
+ * with and without the transaction journal. The journal is never forced to disk here, as between two syncs.
+ * With metrics every write is also timed into the Prometheus histogram,
+ * the gc profiler shows whether that allocates anything.
+ * Exact adds the fixed-point amounts in minor units to the double sums, its cost is the gap to the double path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsWriteBenchmark {
+
+    @Param({"false", "true"})
+    private boolean journal;
+
+    @Param({"false", "true"})
+    private boolean metrics;
+
+    @Param({"false", "true"})
+    private boolean exact;
+
+    private StatisticsService service;
+
+    private Path journalDir;
+
+    private long timestamp;
+
+    @Setup
+    public void setup() throws IOException {
+        Clock clock = Clock.fixed(parse("2018-03-18T12:00:00Z"), UTC);
+        service = new StatisticsService(clock, new SlidingWindowStore(60), new ObjectMapper());
+        if (journal) {
+            journalDir = Files.createTempDirectory("journal");
+            service.setJournal(new TransactionJournal(journalDir, 1000, 256 << 20));
+        }
+        if (exact) {
+            service.setAmountScale(new AmountScale(2));
+        }
+        if (metrics) {
+            service.bindTo(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+        }
+        timestamp = clock.millis() - 500;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (journalDir != null) {
+            try (Stream<Path> files = Files.walk(journalDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void save1Thread() {
+        service.save(12.34, timestamp);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void save4Threads() {
+        service.save(12.34, timestamp);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void save16Threads() {
+        service.save(12.34, timestamp);
+    }
+}
@@ -0,0 +1,73 @@
+package company.challenge.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import company.challenge.dto.TransactionDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares the Jackson binding of a single transaction with {@link TransactionParser},
+ * reading the amount as a double or in minor units.
+ * Allocation rates are reported by the gc profiler configured in build.gradle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionIngestBenchmark {
+
+    private final Clock clock = Clock.systemUTC();
+
+    private byte[] body;
+
+    private ObjectMapper objectMapper;
+
+    private TransactionParser parser;
+
+    @Setup
+    public void setup() {
+        body = ("{\"amount\":1234.56,\"timestamp\":" + clock.millis() + "}").getBytes(UTF_8);
+        objectMapper = new ObjectMapper();
+        parser = new TransactionParser();
+    }
+
+    @Benchmark
+    public void jackson(Blackhole blackhole) throws IOException {
+        TransactionDTO transactionDTO = objectMapper.readValue(body, TransactionDTO.class);
+        blackhole.consume(transactionDTO.getTimestamp() > clock.millis() - 60_000);
+        blackhole.consume(transactionDTO.getAmount());
+    }
+
+    @Benchmark
+    public void streamingParser(Blackhole blackhole) {
+        boolean valid = parser.parse(body, 0, body.length)
+            && parser.getTimestamp() > clock.millis() - 60_000;
+        blackhole.consume(valid);
+        blackhole.consume(parser.getAmount());
+    }
+
+    @Benchmark
+    public void streamingParserUnits(Blackhole blackhole) {
+        boolean valid = parser.parse(body, 0, body.length)
+            && parser.getTimestamp() > clock.millis() - 60_000;
+        blackhole.consume(valid);
+        blackhole.consume(parser.getAmountUnits(2));
+    }
+}
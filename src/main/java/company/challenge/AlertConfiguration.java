@@ -0,0 +1,70 @@
+package company.challenge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import company.challenge.alert.AlertEvaluator;
+import company.challenge.alert.AlertRule;
+import company.challenge.alert.AlertSink;
+import company.challenge.alert.LogAlertSink;
+import company.challenge.alert.WebhookAlertSink;
+import company.challenge.store.WindowStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Alert rules from statistics.alerts.rules and the sink their events go to.
+ */
+@Configuration
+@ConditionalOnProperty("statistics.alerts.rules")
+public class AlertConfiguration {
+
+    @Value("${statistics.alerts.rules}")
+    private List<String> rules;
+
+    @Value("${statistics.alerts.sink:log}")
+    private String sink;
+
+    @Value("${statistics.alerts.webhook.url:}")
+    private String webhookUrl;
+
+    @Value("${statistics.alerts.webhook.timeout:1s}")
+    private Duration webhookTimeout;
+
+    @Bean
+    public AlertSink getAlertSink(ObjectMapper objectMapper) {
+        switch (sink) {
+            case "log":
+                return new LogAlertSink();
+            case "webhook":
+                if (webhookUrl.isBlank()) {
+                    throw new IllegalArgumentException("statistics.alerts.sink=webhook needs statistics.alerts.webhook.url");
+                }
+                return new WebhookAlertSink(URI.create(webhookUrl.trim()), webhookTimeout, objectMapper);
+            default:
+                throw new IllegalArgumentException("Unknown statistics.alerts.sink " + sink + ", expected log or webhook");
+        }
+    }
+
+    @Bean
+    public AlertEvaluator getAlertEvaluator(AlertSink sink, WindowStore store) {
+        List<AlertRule> parsed = new ArrayList<>();
+        for (String rule : rules) {
+            if (rule.isBlank()) {
+                continue;
+            }
+            AlertRule alertRule = AlertRule.parse(rule);
+            if (alertRule.getWindowMillis() > store.getWindowMillis()) {
+                throw new IllegalArgumentException("Alert rule '" + rule + "' is over a window longer than the one held, "
+                    + Duration.ofMillis(store.getWindowMillis()));
+            }
+            parsed.add(alertRule);
+        }
+        return new AlertEvaluator(parsed, sink);
+    }
+}
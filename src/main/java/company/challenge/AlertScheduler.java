@@ -0,0 +1,62 @@
+package company.challenge;
+
+import company.challenge.alert.AlertEvaluator;
+import company.challenge.domain.Statistics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+
+/**
+ * Evaluates the alert rules once per tick on the aggregates the store keeps per bucket,
+ * so alerts fire within a tick of the window crossing the threshold, whatever the transaction rate.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("statistics.alerts.rules")
+class AlertScheduler implements MeterBinder {
+
+    private final StatisticsService service;
+
+    private final AlertEvaluator evaluator;
+
+    private final Clock clock;
+
+    private final long[] windowMillis;
+
+    @Autowired
+    public AlertScheduler(StatisticsService service, AlertEvaluator evaluator, Clock clock) {
+        this.service = service;
+        this.evaluator = evaluator;
+        this.clock = clock;
+        this.windowMillis = evaluator.getWindowMillis();
+        log.info("Evaluating alert rules {}", evaluator.getRules());
+    }
+
+    @Scheduled(fixedRateString = "${statistics.alerts.interval.millis:1000}")
+    public void evaluate() {
+        long now = clock.millis();
+        Statistics[] statistics = service.aggregateWindows(now, windowMillis);
+        int sent = evaluator.evaluate(now, statistics);
+        if (sent > 0) {
+            log.debug("Sent {} alert events", sent);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("statistics.alerts.firing", evaluator, AlertEvaluator::getFiringRules)
+            .description("Alert rules currently firing")
+            .register(registry);
+        FunctionCounter.builder("statistics.alerts.events", evaluator, AlertEvaluator::getEvents)
+            .description("Firing and resolved alert events sent")
+            .register(registry);
+    }
+}
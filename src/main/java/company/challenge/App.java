@@ -1,21 +1,159 @@
 package company.challenge;
 
-import company.challenge.domain.Statistics;
+import company.challenge.ingest.AmountScale;
+import company.challenge.ingest.TimestampPolicy;
+import company.challenge.ingest.TransactionRing;
+import company.challenge.store.DimensionStore;
+import company.challenge.store.OffHeapWindowStore;
+import company.challenge.store.RollupStore;
+import company.challenge.store.SlidingWindowStore;
+import company.challenge.store.WindowStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
 
+@EnableScheduling
 @SpringBootApplication
 public class App {
-    @Value("${statistics.windowSize.seconds}")
-    private int statisticsWindowSize;
+    @Value("${statistics.window:60s}")
+    private Duration statisticsWindow;
+
+    @Value("${statistics.max-window:${statistics.window:60s}}")
+    private Duration statisticsMaxWindow;
+
+    @Value("${statistics.bucket:1s}")
+    private Duration statisticsBucket;
+
+    @Value("${statistics.allowed-lateness:${statistics.max-window:${statistics.window:60s}}}")
+    private Duration allowedLateness;
+
+    @Value("${statistics.max-future-skew:1s}")
+    private Duration maxFutureSkew;
+
+    @Value("${statistics.future-policy:reject}")
+    private String futurePolicy;
+
+    @Value("${statistics.percentiles.enabled:true}")
+    private boolean percentiles;
+
+    @Value("${statistics.rollup.enabled:false}")
+    private boolean rollupEnabled;
+
+    @Value("${statistics.rollup.percentiles.enabled:false}")
+    private boolean rollupPercentiles;
+
+    @Value("${statistics.rollup.minutes:24h}")
+    private Duration rollupMinutes;
+
+    @Value("${statistics.rollup.hours:30d}")
+    private Duration rollupHours;
+
+    @Value("${statistics.exact.scale:2}")
+    private int exactScale;
+
+    @Value("${statistics.ingest.async.capacity:65536}")
+    private int ingestCapacity;
+
+    @Value("${statistics.eviction.enabled:true}")
+    private boolean evictionEnabled;
+
+    @Value("${statistics.eviction.interval.millis:1000}")
+    private long evictionIntervalMillis;
+
+    @Value("${statistics.store:heap}")
+    private String statisticsStore;
+
+    @Value("${statistics.dimensions.bucket:${statistics.bucket:1s}}")
+    private Duration dimensionsBucket;
+
+    @Value("${statistics.dimensions.max-keys:100000}")
+    private int dimensionsMaxKeys;
+
+    @Value("${statistics.dimensions.top:10}")
+    private int dimensionsTop;
 
     @Bean
-    public ConcurrentHashMap<Long, Statistics> getCache() {
-        return new ConcurrentHashMap<>(statisticsWindowSize);
+    public WindowStore getStore() {
+        // rollups fold buckets in the eviction run after they left the window, so their slots must last until then,
+        // with room for a few runs starting late
+        long spareMillis = maxFutureSkew.toMillis() + (rollupEnabled ? 4 * evictionIntervalMillis : 0);
+        switch (statisticsStore) {
+            case "heap":
+                return new SlidingWindowStore(windowMillis(), statisticsBucket.toMillis(), spareMillis, percentiles);
+            case "off-heap":
+                return new OffHeapWindowStore(windowMillis(), statisticsBucket.toMillis(), spareMillis, percentiles);
+            default:
+                throw new IllegalArgumentException("Unknown statistics.store " + statisticsStore
+                    + ", expected heap or off-heap");
+        }
+    }
+
+    @Bean
+    public DimensionStore getDimensionStore() {
+        // keys get the future allowance as part of their ring
+        return new DimensionStore(windowMillis() + maxFutureSkew.toMillis(), dimensionsBucket.toMillis(),
+            dimensionsMaxKeys, dimensionsTop);
+    }
+
+    /**
+     * History past the window in per minute and per hour tiers, fed by the eviction run.
+     * Tier buckets take ~300 bytes, or ~10 KB with percentiles: a day of minutes ~15 MB and a month of hours ~7 MB.
+     */
+    @Bean
+    @ConditionalOnProperty(value = "statistics.rollup.enabled", havingValue = "true")
+    public RollupStore getRollupStore(WindowStore store) {
+        if (!evictionEnabled) {
+            throw new IllegalArgumentException("statistics.rollup.enabled needs statistics.eviction.enabled, "
+                + "which folds the buckets into the rollups");
+        }
+        return new RollupStore(store,
+            new SlidingWindowStore(rollupMinutes.toMillis(), Duration.ofMinutes(1).toMillis(), 0, rollupPercentiles),
+            new SlidingWindowStore(rollupHours.toMillis(), Duration.ofHours(1).toMillis(), 0, rollupPercentiles));
+    }
+
+    /**
+     * Fixed-point amounts in minor units, summed exactly next to the double sums.
+     */
+    @Bean
+    @ConditionalOnProperty(value = "statistics.exact.enabled", havingValue = "true")
+    public AmountScale getAmountScale() {
+        return new AmountScale(exactScale);
+    }
+
+    /**
+     * Ring single transactions are published into when ingest is async, drained by {@link IngestAggregator}.
+     * Each slot takes ~40 bytes, ~2.5 MB for the default capacity.
+     */
+    @Bean
+    @ConditionalOnProperty(value = "statistics.ingest.async.enabled", havingValue = "true")
+    public TransactionRing getIngestRing() {
+        return new TransactionRing(ingestCapacity);
+    }
+
+    @Bean
+    public TimestampPolicy getTimestampPolicy() {
+        if (allowedLateness.toMillis() > windowMillis()) {
+            throw new IllegalArgumentException("statistics.allowed-lateness " + allowedLateness
+                + " is longer than the window held, " + Duration.ofMillis(windowMillis()));
+        }
+        switch (futurePolicy) {
+            case "reject":
+                return new TimestampPolicy(allowedLateness.toMillis(), maxFutureSkew.toMillis(), false);
+            case "clamp":
+                return new TimestampPolicy(allowedLateness.toMillis(), maxFutureSkew.toMillis(), true);
+            default:
+                throw new IllegalArgumentException("Unknown statistics.future-policy " + futurePolicy
+                    + ", expected reject or clamp");
+        }
+    }
+
+    private long windowMillis() {
+        return Math.max(statisticsWindow.toMillis(), statisticsMaxWindow.toMillis());
     }
 
     public static void main(String[] args) {
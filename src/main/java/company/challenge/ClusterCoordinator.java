@@ -0,0 +1,160 @@
+package company.challenge;
+
+import company.challenge.dto.StatisticsDTO;
+import company.challenge.store.BucketCodec;
+import company.challenge.store.SlidingWindowStore;
+import company.challenge.store.WindowStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Answers GET /statistics for the whole cluster: fetches the buckets of every peer in parallel,
+ * merges them with the local ones bucket by bucket and aggregates the window from the result,
+ * so a refresh costs nodes x window buckets whatever the transaction rate.
+ * <p>
+ * The result is reused for statistics.cluster.ttl; concurrent requests for an expired result wait
+ * for a single refresh. Peers which fail or time out are left out of the result and logged.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("statistics.cluster.peers")
+class ClusterCoordinator implements MeterBinder {
+
+    static final String BUCKETS_PATH = "/internal/buckets";
+
+    private final StatisticsService service;
+
+    private final WindowStore store;
+
+    private final Clock clock;
+
+    private final List<URI> peers = new ArrayList<>();
+
+    private final long ttlMillis;
+
+    private final Duration timeout;
+
+    private final HttpClient client;
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    private final LongAdder failedFetches = new LongAdder();
+
+    private volatile Merged merged;
+
+    @Autowired
+    public ClusterCoordinator(StatisticsService service, WindowStore store, Clock clock,
+                              @Value("${statistics.cluster.peers}") List<String> peers,
+                              @Value("${statistics.cluster.ttl:250ms}") Duration ttl,
+                              @Value("${statistics.cluster.timeout:500ms}") Duration timeout) {
+        this.service = service;
+        this.store = store;
+        this.clock = clock;
+        for (String peer : peers) {
+            if (!peer.isBlank()) {
+                this.peers.add(URI.create(peer.trim().replaceAll("/+$", "") + BUCKETS_PATH));
+            }
+        }
+        this.ttlMillis = ttl.toMillis();
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder().connectTimeout(timeout).build();
+        log.info("Merging statistics from {} peers", this.peers.size());
+    }
+
+    public StatisticsDTO getStatistics() {
+        long now = clock.millis();
+        Merged current = merged;
+        if (isFresh(current, now)) {
+            return current.statistics;
+        }
+        refreshLock.lock();
+        try {
+            current = merged;
+            if (isFresh(current, now)) {
+                return current.statistics;
+            }
+            current = new Merged(merge(), now);
+            merged = current;
+            return current.statistics;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("statistics.cluster.fetch.failures", failedFetches, LongAdder::sum)
+            .description("Peer bucket fetches which failed or timed out")
+            .register(registry);
+    }
+
+    /**
+     * @return peer fetches which failed, timed out or returned malformed buckets
+     */
+    public long getFailedFetches() {
+        return failedFetches.sum();
+    }
+
+    private StatisticsDTO merge() {
+        List<CompletableFuture<byte[]>> fetches = new ArrayList<>(peers.size());
+        for (URI peer : peers) {
+            fetches.add(fetch(peer));
+        }
+        WindowStore buckets = new SlidingWindowStore(store.getWindowMillis(), store.getBucketMillis(),
+            store.getFutureMillis(), store.hasPercentiles());
+        BucketCodec.decode(service.exportBuckets(), buckets);
+        for (int i = 0; i < fetches.size(); i++) {
+            try {
+                BucketCodec.decode(fetches.get(i).join(), buckets);
+            } catch (CompletionException | IllegalArgumentException e) {
+                failedFetches.increment();
+                log.warn("Leaving out {}: {}", peers.get(i), e.getMessage());
+            }
+        }
+        return service.aggregate(buckets);
+    }
+
+    private CompletableFuture<byte[]> fetch(URI peer) {
+        HttpRequest request = HttpRequest.newBuilder(peer).timeout(timeout).GET().build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .thenApply(response -> {
+                if (response.statusCode() != 200) {
+                    throw new IllegalStateException("Status " + response.statusCode());
+                }
+                return response.body();
+            });
+    }
+
+    private boolean isFresh(Merged merged, long now) {
+        return merged != null && now >= merged.computedAt && now - merged.computedAt < ttlMillis;
+    }
+
+    private static final class Merged {
+        final StatisticsDTO statistics;
+        final long computedAt;
+
+        Merged(StatisticsDTO statistics, long computedAt) {
+            this.statistics = statistics;
+            this.computedAt = computedAt;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package company.challenge;
+
+/**
+ * JSON body of GET /statistics and its ETag, shared by every request served from the same snapshot.
+ */
+final class EncodedStatistics {
+
+    private final byte[] json;
+
+    private final String etag;
+
+    EncodedStatistics(byte[] json, String etag) {
+        this.json = json;
+        this.etag = etag;
+    }
+
+    /**
+     * @return encoded statistics, shared, must not be modified
+     */
+    byte[] getJson() {
+        return json;
+    }
+
+    /**
+     * @return quoted strong ETag
+     */
+    String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @param ifNoneMatch If-None-Match header, a list of ETags or *, may be null
+     * @return whether the client already holds this body
+     */
+    boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            // If-None-Match compares weakly
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals("*") || trimmed.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+package company.challenge;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evicts expired buckets in the background, so requests only pay for the bucket update.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "statistics.eviction.enabled", havingValue = "true", matchIfMissing = true)
+class EvictionScheduler implements MeterBinder {
+
+    private final StatisticsService service;
+
+    private final AtomicLong runs = new AtomicLong();
+
+    private final AtomicLong evictedKeys = new AtomicLong();
+
+    private final AtomicLong droppedDimensions = new AtomicLong();
+
+    private final AtomicLong totalDurationNanos = new AtomicLong();
+
+    private volatile long lastDurationNanos;
+
+    @Autowired
+    public EvictionScheduler(StatisticsService service) {
+        this.service = service;
+    }
+
+    @Scheduled(fixedRateString = "${statistics.eviction.interval.millis:1000}")
+    public void evict() {
+        long start = System.nanoTime();
+        int evicted = service.cleanCache();
+        int dropped = service.sweepDimensions();
+        long duration = System.nanoTime() - start;
+
+        runs.incrementAndGet();
+        evictedKeys.addAndGet(evicted);
+        droppedDimensions.addAndGet(dropped);
+        totalDurationNanos.addAndGet(duration);
+        lastDurationNanos = duration;
+        log.debug("Evicted {} keys and {} idle dimensions in {} ns", evicted, dropped, duration);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer.builder("statistics.eviction", this, EvictionScheduler::getRuns,
+                EvictionScheduler::getTotalDurationNanos, TimeUnit.NANOSECONDS)
+            .description("Eviction runs and their duration")
+            .register(registry);
+        FunctionCounter.builder("statistics.eviction.buckets", this, EvictionScheduler::getEvictedKeys)
+            .description("Buckets evicted from the window")
+            .register(registry);
+        FunctionCounter.builder("statistics.eviction.dimensions", this, EvictionScheduler::getDroppedDimensions)
+            .description("Idle dimension keys dropped")
+            .register(registry);
+    }
+
+    public long getRuns() {
+        return runs.get();
+    }
+
+    public long getEvictedKeys() {
+        return evictedKeys.get();
+    }
+
+    public long getDroppedDimensions() {
+        return droppedDimensions.get();
+    }
+
+    public long getTotalDurationNanos() {
+        return totalDurationNanos.get();
+    }
+
+    public long getLastDurationNanos() {
+        return lastDurationNanos;
+    }
+}
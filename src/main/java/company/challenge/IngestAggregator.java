@@ -0,0 +1,154 @@
+package company.challenge;
+
+import company.challenge.dto.BatchResultDTO;
+import company.challenge.ingest.TransactionRing;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single writer of async ingest: drains the transactions published into the {@link TransactionRing}
+ * in batches of up to statistics.ingest.async.batch-size, each stored as one {@link TransactionBatch},
+ * so request threads never touch a bucket and a batch merges into each bucket once.
+ * <p>
+ * Transactions are counted by GET /statistics once drained, usually well within a millisecond of the 202.
+ * Transactions a batch finds older than the allowed lateness are dropped like late ones of POST /transactions.
+ * <p>
+ * Spring Boot 2.2 stops the web server only after every lifecycle bean stopped and every bean was destroyed,
+ * so requests keep coming once the aggregator stopped. Stopping closes the ring and stores what is left in it,
+ * and the request threads store the transactions they can no longer publish themselves, so none is lost or shed
+ * while the server shuts down.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "statistics.ingest.async.enabled", havingValue = "true")
+class IngestAggregator implements SmartLifecycle, MeterBinder {
+
+    // pause of an idle aggregator, bounds the latency the ring adds
+    private static final long IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final StatisticsService service;
+
+    private final TransactionRing ring;
+
+    private final int batchSize;
+
+    private final LongAdder storedTransactions = new LongAdder();
+
+    private final LongAdder lateTransactions = new LongAdder();
+
+    private volatile Thread aggregator;
+
+    @Autowired
+    public IngestAggregator(StatisticsService service, TransactionRing ring,
+                            @Value("${statistics.ingest.async.batch-size:1024}") int batchSize) {
+        this.service = service;
+        this.ring = ring;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void start() {
+        Thread started = new Thread(this::aggregate, "ingest-aggregator");
+        started.setDaemon(true);
+        aggregator = started;
+        started.start();
+        log.info("Aggregating transactions from a ring of {}", ring.capacity());
+    }
+
+    /**
+     * Closes the ring and stores what is left in it once the aggregator stopped,
+     * later transactions are stored by the request threads.
+     */
+    @Override
+    public void stop() {
+        Thread current = aggregator;
+        aggregator = null;
+        if (current == null) {
+            return;
+        }
+        LockSupport.unpark(current);
+        try {
+            current.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        ring.close();
+        // producers which claimed a slot before the ring closed are still publishing it
+        while (ring.size() > 0) {
+            if (drain() == 0) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return aggregator != null;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("statistics.ingest.queue.depth", ring, TransactionRing::size)
+            .description("Transactions published and not stored yet")
+            .register(registry);
+        FunctionCounter.builder("statistics.ingest.transactions", storedTransactions, LongAdder::sum)
+            .description("Transactions drained from the ingest ring")
+            .tag("result", "stored")
+            .register(registry);
+        FunctionCounter.builder("statistics.ingest.transactions", lateTransactions, LongAdder::sum)
+            .description("Transactions drained from the ingest ring")
+            .tag("result", "late")
+            .register(registry);
+    }
+
+    public long getStoredTransactions() {
+        return storedTransactions.sum();
+    }
+
+    public long getLateTransactions() {
+        return lateTransactions.sum();
+    }
+
+    /**
+     * Stores up to a batch of published transactions, on the aggregator thread only while it runs.
+     *
+     * @return number of transactions drained
+     */
+    int drain() {
+        if (ring.size() == 0) {
+            return 0;
+        }
+        TransactionBatch batch = service.newBatch();
+        int drained = ring.drain((timestamp, amount, units, key) -> batch.add(amount, units, timestamp, key), batchSize);
+        BatchResultDTO result = batch.commit();
+        storedTransactions.add(result.getAccepted());
+        lateTransactions.add(result.getRejected());
+        return drained;
+    }
+
+    private void aggregate() {
+        Thread self = Thread.currentThread();
+        while (aggregator == self) {
+            try {
+                if (drain() == 0) {
+                    LockSupport.parkNanos(IDLE_NANOS);
+                }
+            } catch (RuntimeException e) {
+                log.error("Failed to store drained transactions", e);
+            }
+        }
+    }
+}
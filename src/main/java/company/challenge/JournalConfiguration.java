@@ -0,0 +1,35 @@
+package company.challenge;
+
+import company.challenge.journal.TransactionJournal;
+import company.challenge.store.WindowStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Clock;
+
+/**
+ * Journals accepted transactions and restores the window from the journal before requests are served.
+ */
+@Configuration
+@ConditionalOnProperty(value = "statistics.journal.enabled", havingValue = "true")
+public class JournalConfiguration {
+
+    @Value("${statistics.journal.dir:journal}")
+    private String journalDir;
+
+    @Value("${statistics.journal.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Bean
+    public TransactionJournal getJournal(WindowStore store, Clock clock) throws IOException {
+        TransactionJournal journal = new TransactionJournal(Paths.get(journalDir), store.getBucketMillis(),
+            Math.toIntExact(segmentSize.toBytes()));
+        journal.recover(store, clock.millis() - store.getWindowMillis());
+        return journal;
+    }
+}
@@ -0,0 +1,61 @@
+package company.challenge;
+
+import company.challenge.journal.TransactionJournal;
+import company.challenge.store.WindowStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Clock;
+
+/**
+ * Forces the journal to disk for every writer at once, and compacts it into a snapshot of the window.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "statistics.journal.enabled", havingValue = "true")
+class JournalScheduler implements MeterBinder {
+
+    private final TransactionJournal journal;
+
+    private final WindowStore store;
+
+    private final Clock clock;
+
+    @Autowired
+    public JournalScheduler(TransactionJournal journal, WindowStore store, Clock clock) {
+        this.journal = journal;
+        this.store = store;
+        this.clock = clock;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("statistics.journal.lost", journal, TransactionJournal::getLostRecords)
+            .description("Records which did not fit a journal segment")
+            .register(registry);
+    }
+
+    @Scheduled(fixedRateString = "${statistics.journal.sync.interval.millis:10}")
+    public void flush() {
+        journal.flush();
+    }
+
+    @Scheduled(fixedRateString = "${statistics.journal.snapshot.interval.millis:10000}")
+    public void compact() {
+        long start = System.nanoTime();
+        try {
+            journal.compact(clock.millis() - store.getWindowMillis());
+        } catch (IOException e) {
+            log.error("Journal compaction failed", e);
+            return;
+        }
+        log.debug("Compacted journal in {} ns", System.nanoTime() - start);
+    }
+}
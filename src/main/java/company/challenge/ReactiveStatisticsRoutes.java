@@ -0,0 +1,222 @@
+package company.challenge;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import company.challenge.dto.TransactionDTO;
+import company.challenge.ingest.TimestampPolicy;
+import company.challenge.ingest.TransactionParser;
+import company.challenge.validation.InvalidAmountException;
+import company.challenge.validation.InvalidWindowException;
+import company.challenge.validation.OverloadedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.REACTIVE;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
+import static org.springframework.web.reactive.function.BodyExtractors.toDataBuffers;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * Same contract as {@link StatisticsController}, served by WebFlux functional routes on Netty.
+ * Enabled with the "reactive" profile.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnWebApplication(type = REACTIVE)
+public class ReactiveStatisticsRoutes {
+
+    private static final ThreadLocal<TransactionParser> PARSERS = ThreadLocal.withInitial(TransactionParser::new);
+
+    private final StatisticsService service;
+
+    private final ObjectReader transactionReader;
+
+    private final StatisticsStream stream;
+
+    @Value("${statistics.batch.max-size:16MB}")
+    private DataSize maxBatchSize = DataSize.ofMegabytes(16);
+
+    @Value("${statistics.ingest.async.retry-after:1s}")
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    // merges the statistics of every node when statistics.cluster.peers is set
+    private ClusterCoordinator coordinator;
+
+    public ReactiveStatisticsRoutes(StatisticsService service, ObjectMapper objectMapper, StatisticsStream stream) {
+        this.service = service;
+        this.transactionReader = objectMapper.readerFor(TransactionDTO.class);
+        this.stream = stream;
+    }
+
+    @Autowired(required = false)
+    void setCoordinator(ClusterCoordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> statisticsRoutes() {
+        return route(GET("/statistics"), this::getStatistics)
+            // ahead of the key route, which would take "range" or "stream" for a key
+            .andRoute(GET("/statistics/range"), this::getRangeStatistics)
+            .andRoute(GET("/statistics/stream"), this::streamStatistics)
+            .andRoute(GET("/statistics/{key}"), this::getKeyStatistics)
+            .andRoute(GET(ClusterCoordinator.BUCKETS_PATH), this::exportBuckets)
+            .andRoute(POST("/transactions/batch")
+                    .and(contentType(APPLICATION_JSON, MediaType.valueOf(StatisticsController.APPLICATION_NDJSON_VALUE))),
+                this::createTransactions)
+            .andRoute(POST("/transactions").and(contentType(APPLICATION_JSON)), this::createTransaction);
+    }
+
+    private Mono<ServerResponse> getStatistics(ServerRequest request) {
+        List<String> windows = request.queryParams().get("window");
+        String top = request.queryParams().getFirst("top");
+        if (windows == null && top == null && coordinator == null) {
+            return getEncodedStatistics(request);
+        }
+        return Mono.fromCallable(() -> top != null ? service.getTopKeys(Integer.parseInt(top))
+                : windows != null ? service.getStatistics(windows)
+                : coordinator.getStatistics())
+            .flatMap(statistics -> ServerResponse.ok().contentType(APPLICATION_JSON).bodyValue(statistics))
+            .onErrorResume(InvalidWindowException.class, this::badRequest)
+            .onErrorResume(NumberFormatException.class, this::badRequest);
+    }
+
+    /**
+     * Writes the JSON encoded once per snapshot, or 304 when If-None-Match holds its ETag.
+     */
+    private Mono<ServerResponse> getEncodedStatistics(ServerRequest request) {
+        EncodedStatistics statistics = service.getEncodedStatistics();
+        if (statistics.matches(String.join(",", request.headers().header(HttpHeaders.IF_NONE_MATCH)))) {
+            return ServerResponse.status(HttpStatus.NOT_MODIFIED).eTag(statistics.getEtag()).build();
+        }
+        return ServerResponse.ok().contentType(APPLICATION_JSON).eTag(statistics.getEtag())
+            .bodyValue(statistics.getJson());
+    }
+
+    private Mono<ServerResponse> badRequest(Throwable e) {
+        log.debug(e.getMessage());
+        return ServerResponse.badRequest().build();
+    }
+
+    private Mono<ServerResponse> getRangeStatistics(ServerRequest request) {
+        String from = request.queryParams().getFirst("from");
+        String to = request.queryParams().getFirst("to");
+        if (from == null || to == null) {
+            return ServerResponse.badRequest().build();
+        }
+        return Mono.fromCallable(() -> service.getStatistics(Long.parseLong(from), Long.parseLong(to)))
+            .flatMap(statistics -> ServerResponse.ok().contentType(APPLICATION_JSON).bodyValue(statistics))
+            .onErrorResume(InvalidWindowException.class, this::badRequest)
+            .onErrorResume(NumberFormatException.class, this::badRequest);
+    }
+
+    // a subscriber over the limit fails before the first event, so the response is still 503, see the exception
+    private Mono<ServerResponse> streamStatistics(ServerRequest request) {
+        return ServerResponse.ok().contentType(TEXT_EVENT_STREAM)
+            .body(BodyInserters.fromServerSentEvents(stream.subscribe()));
+    }
+
+    private Mono<ServerResponse> getKeyStatistics(ServerRequest request) {
+        return ServerResponse.ok().contentType(APPLICATION_JSON)
+            .bodyValue(service.getStatistics(request.pathVariable("key")));
+    }
+
+    private Mono<ServerResponse> exportBuckets(ServerRequest request) {
+        return Mono.fromCallable(service::exportBuckets)
+            .flatMap(buckets -> ServerResponse.ok().contentType(APPLICATION_OCTET_STREAM).bodyValue(buckets));
+    }
+
+    /**
+     * Bodies are joined up to their limit, 413 beyond it, and parsed off the event loop.
+     */
+    private Mono<ServerResponse> createTransaction(ServerRequest request) {
+        return DataBufferUtils.join(request.body(toDataBuffers()), TransactionParser.MAX_BODY_SIZE)
+            .flatMap(body -> Mono.fromCallable(() -> save(body)).subscribeOn(Schedulers.boundedElastic()))
+            .onErrorResume(DataBufferLimitException.class, e -> {
+                log.debug(e.getMessage());
+                return Mono.just(HttpStatus.PAYLOAD_TOO_LARGE);
+            })
+            .onErrorResume(InvalidAmountException.class, e -> {
+                log.debug(e.getMessage());
+                return Mono.just(HttpStatus.BAD_REQUEST);
+            })
+            .defaultIfEmpty(HttpStatus.BAD_REQUEST)
+            .flatMap(status -> ServerResponse.status(status).build())
+            .onErrorResume(OverloadedException.class, e -> {
+                log.debug(e.getMessage());
+                return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, OverloadedException.retryAfter(retryAfter))
+                    .build();
+            });
+    }
+
+    private Mono<ServerResponse> createTransactions(ServerRequest request) {
+        return DataBufferUtils.join(request.body(toDataBuffers()), Math.toIntExact(maxBatchSize.toBytes()))
+            .flatMap(body -> Mono.fromCallable(() -> saveAll(body).commit()).subscribeOn(Schedulers.boundedElastic()))
+            .switchIfEmpty(Mono.fromSupplier(() -> service.newBatch().commit()))
+            .flatMap(result -> ServerResponse.ok().contentType(APPLICATION_JSON).bodyValue(result))
+            .onErrorResume(JsonProcessingException.class, e -> {
+                log.debug(e.getMessage());
+                return ServerResponse.badRequest().build();
+            })
+            .onErrorResume(DataBufferLimitException.class, e -> {
+                log.debug(e.getMessage());
+                return ServerResponse.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+            });
+    }
+
+    private HttpStatus save(DataBuffer body) throws IOException {
+        TransactionParser parser = PARSERS.get();
+        try (InputStream in = body.asInputStream(true)) {
+            if (!parser.parse(in)) {
+                return HttpStatus.BAD_REQUEST;
+            }
+        }
+        long timestamp = service.admit(parser.getTimestamp());
+        if (timestamp == TimestampPolicy.REJECTED) {
+            return HttpStatus.NO_CONTENT;
+        }
+        service.save(parser, timestamp);
+        return service.isAsync() ? HttpStatus.ACCEPTED : HttpStatus.CREATED;
+    }
+
+    private TransactionBatch saveAll(DataBuffer body) throws IOException {
+        TransactionBatch batch = service.newBatch();
+        try (InputStream in = body.asInputStream(true);
+             MappingIterator<TransactionDTO> transactions = transactionReader.readValues(in)) {
+            while (transactions.hasNextValue()) {
+                batch.add(transactions.nextValue());
+            }
+        }
+        return batch;
+    }
+}
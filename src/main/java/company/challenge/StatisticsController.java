@@ -1,41 +1,181 @@
 package company.challenge;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import company.challenge.dto.BatchResultDTO;
+import company.challenge.dto.KeyStatisticsDTO;
 import company.challenge.dto.StatisticsDTO;
 import company.challenge.dto.TransactionDTO;
+import company.challenge.ingest.TimestampPolicy;
+import company.challenge.ingest.TransactionParser;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
-import javax.validation.Valid;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
 
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static javax.servlet.http.HttpServletResponse.SC_ACCEPTED;
+import static javax.servlet.http.HttpServletResponse.SC_CREATED;
+import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.SERVLET;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM_VALUE;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
 @Slf4j
 @RestController
+@ConditionalOnWebApplication(type = SERVLET)
 public class StatisticsController {
 
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final ThreadLocal<TransactionParser> PARSERS = ThreadLocal.withInitial(TransactionParser::new);
+
     private final StatisticsService service;
 
+    private final ObjectReader transactionReader;
+
+    private final ObjectWriter statisticsWriter;
+
+    private final StatisticsStream stream;
+
+    // merges the statistics of every node when statistics.cluster.peers is set
+    private ClusterCoordinator coordinator;
+
     @Autowired
-    public StatisticsController(StatisticsService service) {
+    public StatisticsController(StatisticsService service, ObjectMapper objectMapper, StatisticsStream stream) {
         this.service = service;
+        this.transactionReader = objectMapper.readerFor(TransactionDTO.class);
+        this.statisticsWriter = objectMapper.writerFor(StatisticsDTO.class);
+        this.stream = stream;
     }
 
+    @Autowired(required = false)
+    void setCoordinator(ClusterCoordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * Writes the JSON encoded once per snapshot, or 304 when If-None-Match holds its ETag.
+     * Cluster statistics are encoded per request and carry no ETag.
+     */
     @RequestMapping(method = GET, path = "/statistics", produces = APPLICATION_JSON_VALUE)
-    public StatisticsDTO get() {
-        return service.getStatistics();
+    public ResponseEntity<byte[]> getStatistics(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                    String ifNoneMatch) throws IOException {
+        if (coordinator != null) {
+            return ResponseEntity.ok().contentType(APPLICATION_JSON)
+                .body(statisticsWriter.writeValueAsBytes(coordinator.getStatistics()));
+        }
+        EncodedStatistics statistics = service.getEncodedStatistics();
+        if (statistics.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(statistics.getEtag()).build();
+        }
+        return ResponseEntity.ok().contentType(APPLICATION_JSON).eTag(statistics.getEtag()).body(statistics.getJson());
+    }
+
+    /**
+     * Statistics per window, e.g. {@code ?window=1s,10s,5m}, each at most statistics.max-window long.
+     */
+    @RequestMapping(method = GET, path = "/statistics", params = "window", produces = APPLICATION_JSON_VALUE)
+    public Map<String, StatisticsDTO> get(@RequestParam("window") List<String> windows) {
+        return service.getStatistics(windows);
+    }
+
+    /**
+     * Keys with the most transactions in the window, ranked at most a dimension bucket ago.
+     */
+    @RequestMapping(method = GET, path = "/statistics", params = "top", produces = APPLICATION_JSON_VALUE)
+    public List<KeyStatisticsDTO> getTop(@RequestParam("top") int top) {
+        return service.getTopKeys(top);
+    }
+
+    /**
+     * Statistics of a time range in epoch millis, {@code ?from=..&to=..}, answered from the rollups past the window.
+     */
+    @RequestMapping(method = GET, path = "/statistics/range", produces = APPLICATION_JSON_VALUE)
+    public StatisticsDTO getRange(@RequestParam("from") long from, @RequestParam("to") long to) {
+        return service.getStatistics(from, to);
     }
 
+    /**
+     * Pushes the statistics as they change, see {@link StatisticsStream}.
+     * Responds 503 when statistics.stream.max-subscribers are already subscribed.
+     */
+    @RequestMapping(method = GET, path = "/statistics/stream", produces = TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<StatisticsDTO>> stream() {
+        return stream.subscribe();
+    }
+
+    @RequestMapping(method = GET, path = "/statistics/{key}", produces = APPLICATION_JSON_VALUE)
+    public StatisticsDTO get(@PathVariable("key") String key) {
+        return service.getStatistics(key);
+    }
+
+    /**
+     * Buckets of this node in the binary form merged by {@link ClusterCoordinator}.
+     */
+    @RequestMapping(method = GET, path = ClusterCoordinator.BUCKETS_PATH, produces = APPLICATION_OCTET_STREAM_VALUE)
+    public byte[] exportBuckets() {
+        return service.exportBuckets();
+    }
+
+    /**
+     * Parses the body straight into primitives, so a transaction is stored without any intermediate objects.
+     * Responds 201 when stored, 204 when rejected by the {@link TimestampPolicy} and 400 when malformed,
+     * or for fixed-point amounts when the amount does not fit in minor units.
+     * With async ingest, responds 202 once published for {@link IngestAggregator}, or stored in its place
+     * on shutdown, and a full ring sheds the transaction with 503 and a Retry-After.
+     */
     @RequestMapping(method = POST, path = "/transactions", consumes = APPLICATION_JSON_VALUE)
-    @ResponseStatus(HttpStatus.CREATED)
-    public void createTransaction(@RequestBody @Valid TransactionDTO transactionDTO) {
-        service.save(transactionDTO);
+    public void createTransaction(InputStream body, HttpServletResponse response) throws IOException {
+        TransactionParser parser = PARSERS.get();
+        if (!parser.parse(body)) {
+            response.setStatus(SC_BAD_REQUEST);
+            return;
+        }
+        long timestamp = service.admit(parser.getTimestamp());
+        if (timestamp == TimestampPolicy.REJECTED) {
+            response.setStatus(SC_NO_CONTENT);
+            return;
+        }
+        service.save(parser, timestamp);
+        response.setStatus(service.isAsync() ? SC_ACCEPTED : SC_CREATED);
+    }
+
+    /**
+     * Accepts a JSON array or newline-delimited JSON, streamed from the request body.
+     * Transactions older than the window are rejected one by one and reported in the result.
+     */
+    @RequestMapping(method = POST, path = "/transactions/batch",
+        consumes = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE}, produces = APPLICATION_JSON_VALUE)
+    public BatchResultDTO createTransactions(InputStream body) throws IOException {
+        TransactionBatch batch = service.newBatch();
+        try (MappingIterator<TransactionDTO> transactions = transactionReader.readValues(body)) {
+            while (transactions.hasNextValue()) {
+                batch.add(transactions.nextValue());
+            }
+        }
+        return batch.commit();
     }
 
 }
@@ -1,140 +1,580 @@
 package company.challenge;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import company.challenge.domain.Statistics;
-import company.challenge.domain.Transaction;
+import company.challenge.dto.KeyStatisticsDTO;
 import company.challenge.dto.StatisticsDTO;
 import company.challenge.dto.TransactionDTO;
+import company.challenge.ingest.AmountScale;
+import company.challenge.ingest.TimestampPolicy;
+import company.challenge.ingest.TransactionParser;
+import company.challenge.ingest.TransactionRing;
+import company.challenge.journal.TransactionJournal;
+import company.challenge.store.BucketCodec;
+import company.challenge.store.DimensionStore;
+import company.challenge.store.RollupStore;
+import company.challenge.store.WindowAggregate;
+import company.challenge.store.WindowStore;
+import company.challenge.validation.InvalidAmountException;
+import company.challenge.validation.InvalidWindowException;
+import company.challenge.validation.OverloadedException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.stereotype.Service;
 
+import java.io.UncheckedIOException;
 import java.time.Clock;
-import java.util.Comparator;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-import static java.time.Instant.ofEpochMilli;
-import static java.util.Optional.ofNullable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
-class StatisticsService {
-
-    @Value("${statistics.windowSize.seconds:60}")
-    private int statisticsWindowSize = 60;
+class StatisticsService implements MeterBinder {
 
-    @Value("${statistics.parallelism.threshold:20}")
-    private int parallelismThreshold = 20;
+    @Value("${statistics.window:60s}")
+    private Duration statisticsWindow = Duration.ofSeconds(60);
 
     private final Clock clock;
 
-    private final ConcurrentHashMap<Long, Statistics> cache;
+    private final WindowStore store;
+
+    private final DimensionStore dimensions;
+
+    private final TimestampPolicy timestampPolicy;
+
+    private TransactionJournal journal;
+
+    // without tiers until statistics.rollup.enabled, ranges are then limited to the window
+    private RollupStore rollups;
+
+    // null unless amounts are fixed-point
+    private AmountScale amountScale;
+
+    // null unless ingest is async, single transactions are then published for IngestAggregator
+    private TransactionRing ring;
+
+    private final LongAdder shedTransactions = new LongAdder();
+
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    private volatile Snapshot snapshot;
+
+    // encodes snapshots for GET /statistics with the application's mapper
+    private final ObjectWriter statisticsWriter;
+
+    // tells the ETags of this instance from those of other nodes or earlier runs
+    private final String etagPrefix = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    private long snapshotGeneration;
+
+    // recorded once bound to a meter registry, see bindTo, read by request threads without locking
+    private volatile Timer saveTimer;
+
+    private volatile Timer getTimer;
+
+    private volatile DistributionSummary timestampSkew;
+
+    private final LongAdder snapshotRefreshes = new LongAdder();
+
+    private final LongAdder snapshotWaits = new LongAdder();
+
+    public StatisticsService(Clock clock, WindowStore store, ObjectMapper objectMapper) {
+        this(clock, store, new DimensionStore(store.getWindowMillis(), store.getBucketMillis(), 100_000, 10),
+            new TimestampPolicy(store.getWindowMillis(), store.getFutureMillis(), false), objectMapper);
+    }
 
     @Autowired
-    public StatisticsService(Clock clock, ConcurrentHashMap<Long, Statistics> cache) {
+    public StatisticsService(Clock clock, WindowStore store, DimensionStore dimensions, TimestampPolicy timestampPolicy,
+                             ObjectMapper objectMapper) {
         this.clock = clock;
-        this.cache = cache;
+        this.store = store;
+        this.timestampPolicy = timestampPolicy;
+        this.dimensions = dimensions;
+        this.rollups = new RollupStore(store);
+        this.statisticsWriter = objectMapper.writerFor(StatisticsDTO.class);
+    }
+
+    /**
+     * Folds buckets leaving the window into the per minute and per hour tiers, see {@link App#getRollupStore}.
+     */
+    @Autowired(required = false)
+    public void setRollups(RollupStore rollups) {
+        this.rollups = rollups;
+    }
+
+    /**
+     * Sums amounts exactly in minor units and renders sum and avg as decimals, see {@link App#getAmountScale}.
+     */
+    @Autowired(required = false)
+    public void setAmountScale(AmountScale amountScale) {
+        this.amountScale = amountScale;
+    }
+
+    /**
+     * Publishes single transactions into the ring drained by {@link IngestAggregator}, see {@link App#getIngestRing}.
+     */
+    @Autowired(required = false)
+    public void setRing(TransactionRing ring) {
+        this.ring = ring;
+    }
+
+    /**
+     * @return whether single transactions are only published by {@link #save}, and stored once drained
+     */
+    public boolean isAsync() {
+        return ring != null;
+    }
+
+    /**
+     * Journals every transaction accepted from now on, see {@link JournalConfiguration}.
+     */
+    @Autowired(required = false)
+    public void setJournal(TransactionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Publishes latencies and counters, bound by Spring Boot to the registry scraped on /management/prometheus.
+     * Recording allocates nothing, so the timers do not disturb the writes they measure.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        saveTimer = Timer.builder("statistics.save")
+            .description("Time to store a single transaction")
+            .publishPercentileHistogram()
+            .register(registry);
+        getTimer = Timer.builder("statistics.get")
+            .description("Time to serve the statistics of the default window")
+            .publishPercentileHistogram()
+            .register(registry);
+        timestampSkew = DistributionSummary.builder("statistics.timestamp.skew")
+            .description("Age of single transactions when received, transactions from the future are not recorded")
+            .baseUnit("milliseconds")
+            .publishPercentileHistogram()
+            .register(registry);
+        FunctionCounter.builder("statistics.transactions.late", timestampPolicy, TimestampPolicy::getLateTransactions)
+            .description("Transactions rejected as older than the allowed lateness")
+            .register(registry);
+        FunctionCounter.builder("statistics.transactions.future", timestampPolicy,
+                TimestampPolicy::getRejectedFutureTransactions)
+            .description("Transactions further ahead of the clock than the max future skew")
+            .tag("result", "rejected")
+            .register(registry);
+        FunctionCounter.builder("statistics.transactions.future", timestampPolicy,
+                TimestampPolicy::getClampedFutureTransactions)
+            .description("Transactions further ahead of the clock than the max future skew")
+            .tag("result", "clamped")
+            .register(registry);
+        FunctionCounter.builder("statistics.snapshot.refreshes", snapshotRefreshes, LongAdder::sum)
+            .description("Statistics aggregated from the store rather than served from the snapshot")
+            .register(registry);
+        FunctionCounter.builder("statistics.snapshot.waits", snapshotWaits, LongAdder::sum)
+            .description("Reads which waited for the snapshot to be refreshed by another one")
+            .register(registry);
+        Gauge.builder("statistics.buckets", store, WindowStore::size)
+            .description("Buckets holding transactions")
+            .register(registry);
+        FunctionCounter.builder("statistics.buckets.overwritten", store, WindowStore::getOverwrittenBuckets)
+            .description("Buckets reused by a newer period before the eviction run folded them into the rollups")
+            .register(registry);
+        if (ring != null) {
+            FunctionCounter.builder("statistics.ingest.shed", shedTransactions, LongAdder::sum)
+                .description("Transactions rejected with 503 as the ingest ring was full")
+                .register(registry);
+        }
+        if (amountScale != null) {
+            FunctionCounter.builder("statistics.exact.overflows", amountScale, AmountScale::getOverflows)
+                .description("Sums beyond the range of exact sums, served from the double sum")
+                .register(registry);
+        }
     }
 
     public void save(TransactionDTO transactionDTO) {
-        Transaction transaction = new Transaction();
-        transaction.setAmount(transactionDTO.getAmount());
-        transaction.setTimestamp(transactionDTO.getTimestamp());
-        updateCacheData(transaction);
+        save(transactionDTO.getAmount(), transactionDTO.getTimestamp(), transactionDTO.getKey());
+    }
+
+    public void save(double amount, long timestamp) {
+        save(amount, timestamp, null);
+    }
+
+    /**
+     * Also counts the transaction for its dimension key, if there is one.
+     *
+     * @throws InvalidAmountException if amounts are fixed-point and the amount does not fit in minor units
+     * @throws OverloadedException     if ingest is async and the ring is full
+     */
+    public void save(double amount, long timestamp, String key) {
+        if (amountScale == null) {
+            save(amount, 0, timestamp, key);
+            return;
+        }
+        long units = amountScale.toUnits(amount);
+        save(amountScale.toAmount(units), units, timestamp, key);
+    }
+
+    /**
+     * Stores the transaction last parsed by the parser. Fixed-point amounts are read in minor units straight
+     * from the digits, so even amounts with more digits than a double holds are summed exactly.
+     *
+     * @throws InvalidAmountException if amounts are fixed-point and the amount does not fit in minor units
+     * @throws OverloadedException     if ingest is async and the ring is full
+     */
+    public void save(TransactionParser parser, long timestamp) {
+        if (amountScale == null) {
+            save(parser.getAmount(), 0, timestamp, parser.getKey());
+            return;
+        }
+        long units = amountScale.toUnits(parser);
+        save(amountScale.toAmount(units), units, timestamp, parser.getKey());
     }
 
+    private void save(double amount, long units, long timestamp, String key) {
+        Timer timer = saveTimer;
+        long start = timer != null ? System.nanoTime() : 0;
+
+        if (ring == null || !publish(amount, units, timestamp, key)) {
+            store(amount, units, timestamp);
+            if (key != null && !dimensions.add(key, timestamp, amount, units) && log.isDebugEnabled()) {
+                log.debug("Transaction {} at {} is not tracked for key {}", amount, timestamp, key);
+            }
+        }
+
+        if (timer != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @return false if the ring is closed, the aggregator stopped and the transaction is stored by the caller
+     */
+    private boolean publish(double amount, long units, long timestamp, String key) {
+        if (ring.offer(timestamp, amount, units, key)) {
+            return true;
+        }
+        if (ring.isClosed()) {
+            return false;
+        }
+        shedTransactions.increment();
+        throw new OverloadedException("Ingest ring of " + ring.capacity() + " transactions is full");
+    }
+
+    private void store(double amount, long units, long timestamp) {
+        if (log.isDebugEnabled()) {
+            log.debug("Updating cache for the key: {}", store.alignToBucket(timestamp));
+        }
+
+        if (!store.add(timestamp, amount, units)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Bucket for transaction {} at {} is already reused by a newer period", amount, timestamp);
+            }
+            return;
+        }
+        if (journal != null) {
+            journal.append(timestamp, amount, units);
+        }
+    }
+
+    /**
+     * Applies the {@link TimestampPolicy} against the injected clock and records the age of the transaction.
+     *
+     * @return timestamp to store the transaction at, or {@link TimestampPolicy#REJECTED}
+     */
+    public long admit(long timestamp) {
+        long now = clock.millis();
+        DistributionSummary skew = timestampSkew;
+        if (skew != null) {
+            skew.record(now - timestamp);
+        }
+        return timestampPolicy.admit(timestamp, now);
+    }
+
+    /**
+     * @return single transactions rejected as the ingest ring was full
+     */
+    public long getShedTransactions() {
+        return shedTransactions.sum();
+    }
+
+    /**
+     * @return batch admitting transactions by the {@link TimestampPolicy} as of now
+     */
+    public TransactionBatch newBatch() {
+        return new TransactionBatch(store, dimensions, journal, timestampPolicy, amountScale, clock.millis());
+    }
+
+    /**
+     * Returns the published snapshot while no bucket was written and none of its buckets expired,
+     * otherwise refreshes it from the store.
+     */
     public StatisticsDTO getStatistics() {
-        long windowStartTimestamp = clock.instant()
-            .minusSeconds(statisticsWindowSize).toEpochMilli();
+        Timer timer = getTimer;
+        if (timer == null) {
+            return getSnapshot().statistics;
+        }
+        long start = System.nanoTime();
+        StatisticsDTO statistics = getSnapshot().statistics;
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return statistics;
+    }
 
-        Statistics statistics = ofNullable(
-            cache.reduce(parallelismThreshold,
-                (k, v) -> filter(k, v, windowStartTimestamp),
-                this::calculateStatistics))
-            .orElse(new Statistics());
+    /**
+     * {@link #getStatistics()} as JSON, encoded once per snapshot, so serving an unchanged window
+     * neither allocates nor serializes. The ETag changes with every snapshot.
+     */
+    public EncodedStatistics getEncodedStatistics() {
+        Timer timer = getTimer;
+        long start = timer != null ? System.nanoTime() : 0;
+        Snapshot current = getSnapshot();
+        EncodedStatistics encoded = current.encoded;
+        if (encoded == null) {
+            // concurrent first reads may both encode, either result is the same
+            encoded = new EncodedStatistics(encode(current.statistics), current.etag);
+            current.encoded = encoded;
+        }
+        if (timer != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return encoded;
+    }
+
+    private Snapshot getSnapshot() {
+        long now = clock.millis();
+        Snapshot current = snapshot;
+        if (isFresh(current, now)) {
+            return current;
+        }
+        if (!snapshotLock.tryLock()) {
+            snapshotWaits.increment();
+            snapshotLock.lock();
+        }
+        try {
+            current = snapshot;
+            if (isFresh(current, now)) {
+                return current;
+            }
+            current = takeSnapshot(now);
+            snapshot = current;
+            snapshotRefreshes.increment();
+            return current;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
 
-        return toDto(statistics);
+    private byte[] encode(StatisticsDTO statistics) {
+        try {
+            return statisticsWriter.writeValueAsBytes(statistics);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private StatisticsDTO toDto(Statistics statistics) {
-        StatisticsDTO statisticsDTO = new StatisticsDTO();
-        statisticsDTO.setSum(statistics.getSum());
-        statisticsDTO.setAvg(statistics.getAvg());
-        statisticsDTO.setMax(statistics.getMax());
-        statisticsDTO.setMin(statistics.getMin());
-        statisticsDTO.setCount(statistics.getCount());
-        return statisticsDTO;
-    }
-
-    private Statistics filter(long key, Statistics statistics, long windowStartTimestamp) {
-        log.debug("key:window {} : {}: {}", key, windowStartTimestamp, key > windowStartTimestamp);
-        return key >= windowStartTimestamp ? statistics : new Statistics();
-    }
-
-    private Statistics calculateStatistics(Statistics total, Statistics current) {
-        log.debug("current: {}, total: {}", current, total);
-        Statistics result = new Statistics();
-        result.setSum(total.getSum() + current.getSum());
-        result.setCount(total.getCount() + current.getCount());
-        result.setMax(Math.max(total.getMax(), current.getMax()));
-        result.setMin(Math.min(total.getMin(), current.getMin()));
-        double avg = result.getCount() == 0 ? 0 : result.getSum() / result.getCount();
-        result.setAvg(avg);
-        log.debug("result: {}", result);
+    /**
+     * Aggregates several windows, e.g. "1s", "10s" or "PT5M", from a single pass over the store index.
+     * Comma separated values are split.
+     *
+     * @return statistics per requested window, in request order
+     */
+    public Map<String, StatisticsDTO> getStatistics(List<String> windows) {
+        List<String> names = new ArrayList<>();
+        for (String window : windows) {
+            for (String name : window.split(",")) {
+                names.add(name.trim());
+            }
+        }
+        long now = clock.millis();
+        long[] windowStarts = new long[names.size()];
+        for (int i = 0; i < windowStarts.length; i++) {
+            windowStarts[i] = now - parseWindow(names.get(i));
+        }
+
+        WindowAggregate[] aggregates = store.aggregateWindows(horizonTimestamp(now), windowStarts);
+        Map<String, StatisticsDTO> result = new LinkedHashMap<>();
+        for (int i = 0; i < aggregates.length; i++) {
+            result.put(names.get(i), toDto(aggregates[i].getStatistics()));
+        }
         return result;
     }
 
-    private void updateCacheData(Transaction transaction) {
-        long timeKey = TimeUtil.alignMillisToSeconds(transaction.getTimestamp());
-        log.debug("Updating cache for the key: {}", timeKey);
+    /**
+     * Answers from the coarsest rollup tiers inside the range, and from the store for the window.
+     *
+     * @return statistics of the buckets started in [from, to), epoch millis
+     */
+    public StatisticsDTO getStatistics(long from, long to) {
+        if (from >= to) {
+            throw new InvalidWindowException("Range from " + from + " is not before " + to);
+        }
+        return toDto(rollups.aggregate(from, to));
+    }
 
-        cache.compute(timeKey, (k, v) -> updateCacheWithTransaction(v, transaction)); // atomic
+    /**
+     * @return statistics of a dimension key over the default window, empty for unknown keys
+     */
+    public StatisticsDTO getStatistics(String key) {
+        return toDto(dimensions.get(key, clock.millis() - statisticsWindow.toMillis()));
+    }
 
-        cleanCache();
-        printCache(transaction.getTimestamp());
+    /**
+     * Ranks the busiest keys kept per dimension bucket, see {@link DimensionStore#getTop}.
+     *
+     * @return up to n keys with the most transactions in the default window
+     */
+    public List<KeyStatisticsDTO> getTopKeys(int n) {
+        return dimensions.getTop(clock.millis() - statisticsWindow.toMillis()).stream()
+            .limit(Math.max(n, 0))
+            .map(keyed -> new KeyStatisticsDTO(keyed.getKey(), toDto(keyed.getStatistics())))
+            .collect(Collectors.toList());
     }
 
-    private Statistics updateCacheWithTransaction(Statistics current, Transaction transaction) {
-        current = ofNullable(current).orElseGet(() -> getInitialStatistics(transaction));
+    /**
+     * @return buckets of the longest window in the {@link BucketCodec} form, merged by {@link ClusterCoordinator}
+     */
+    public byte[] exportBuckets() {
+        return BucketCodec.encode(store, horizonTimestamp(clock.millis()));
+    }
 
-        Statistics result = new Statistics();
-        result.setSum(current.getSum() + transaction.getAmount());
-        result.setCount(current.getCount() + 1); // count this transaction
-        result.setMax(Math.max(current.getMax(), transaction.getAmount()));
-        result.setMin(Math.min(current.getMin(), transaction.getAmount()));
-        result.setAvg(result.getSum() / result.getCount());
-        log.debug("New statistic based on transaction {} is {}", transaction, result);
-        return result;
+    /**
+     * Aggregates the default window from buckets merged from several nodes into a store shaped like this one.
+     */
+    StatisticsDTO aggregate(WindowStore merged) {
+        long now = clock.millis();
+        return toDto(merged.aggregateWindows(horizonTimestamp(now), now - statisticsWindow.toMillis())[0].getStatistics());
     }
 
-    private Statistics getInitialStatistics(Transaction transaction) {
-        Statistics result = new Statistics();
-        result.setMin(transaction.getAmount());
-        result.setMax(transaction.getAmount());
-        return result;
+    /**
+     * Aggregates windows ending now from a single pass over the store index, called by {@link AlertScheduler}.
+     *
+     * @param windowMillis window lengths, each at most the longest window the store holds
+     * @return statistics per window, in the same order
+     */
+    Statistics[] aggregateWindows(long now, long[] windowMillis) {
+        long[] windowStarts = new long[windowMillis.length];
+        for (int i = 0; i < windowStarts.length; i++) {
+            windowStarts[i] = now - windowMillis[i];
+        }
+        WindowAggregate[] aggregates = store.aggregateWindows(horizonTimestamp(now), windowStarts);
+        Statistics[] statistics = new Statistics[aggregates.length];
+        for (int i = 0; i < aggregates.length; i++) {
+            statistics[i] = aggregates[i].getStatistics();
+        }
+        return statistics;
     }
 
-    // can be done asynchronously
-    private void cleanCache() {
-        long windowStartTimestamp = clock.instant()
-            .minusSeconds(statisticsWindowSize).toEpochMilli();
+    private long parseWindow(String window) {
+        Duration duration;
+        try {
+            duration = DurationStyle.detectAndParse(window);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidWindowException("Malformed window '" + window + "'");
+        }
+        if (duration.isNegative() || duration.isZero() || duration.toMillis() > store.getWindowMillis()) {
+            throw new InvalidWindowException("Window '" + window + "' is not within (0, "
+                + Duration.ofMillis(store.getWindowMillis()) + "]");
+        }
+        return duration.toMillis();
+    }
 
-        cache.forEachKey(parallelismThreshold,
-            k -> {
-                if (k < windowStartTimestamp) {
-                    cache.remove(k);
-                }
-            }
-        );
+    private boolean isFresh(Snapshot snapshot, long now) {
+        return snapshot != null
+            && now >= snapshot.computedAt
+            && now < snapshot.validUntil
+            && !store.isModified()
+            && snapshot.version == store.getVersion();
     }
 
-    private void printCache(long timestamp) {
-        log.debug("time: {}", ofEpochMilli(timestamp).toString());
-        if (log.isDebugEnabled()) {
-            cache.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
-                .forEach(e -> log.debug("{} -> {}", e.getKey(), e.getValue()));
+    private Snapshot takeSnapshot(long now) {
+        long windowMillis = statisticsWindow.toMillis();
+        WindowAggregate aggregate = store.aggregateWindows(horizonTimestamp(now), now - windowMillis)[0];
+        // the oldest bucket stays in the window as long as its key >= now - window
+        long validUntil = aggregate.getOldestKey() == Long.MAX_VALUE
+            ? Long.MAX_VALUE
+            : aggregate.getOldestKey() + windowMillis + 1;
+        // taken under the snapshot lock
+        String etag = "\"" + etagPrefix + "-" + Long.toHexString(++snapshotGeneration) + "\"";
+        return new Snapshot(toDto(aggregate.getStatistics()), now, validUntil, aggregate.getVersion(), etag);
+    }
+
+    private StatisticsDTO toDto(Statistics statistics) {
+        Number sum;
+        Number avg;
+        if (amountScale != null) {
+            sum = amountScale.toSum(statistics.getSum(), statistics.getUnits());
+            avg = amountScale.toAverage(sum, statistics.getCount());
+        } else {
+            // doubles all the way, also for sums which overflowed to infinity
+            sum = statistics.getSum();
+            avg = statistics.getAvg();
+        }
+        return new StatisticsDTO(
+            sum,
+            avg,
+            statistics.getMax(),
+            statistics.getMin(),
+            statistics.getCount(),
+            statistics.getP50(),
+            statistics.getP95(),
+            statistics.getP99());
+    }
+
+    /**
+     * Resets buckets which fell out of the window, folding them into the rollups, called by {@link EvictionScheduler}.
+     *
+     * @return number of evicted buckets
+     */
+    int cleanCache() {
+        return rollups.evict(horizonTimestamp(clock.millis()));
+    }
+
+    /**
+     * Drops idle dimension keys, called by {@link EvictionScheduler}.
+     *
+     * @return number of dropped keys
+     */
+    int sweepDimensions() {
+        return dimensions.sweep(horizonTimestamp(clock.millis()));
+    }
+
+    // start of the longest window the store holds
+    private long horizonTimestamp(long now) {
+        return now - store.getWindowMillis();
+    }
+
+    private static final class Snapshot {
+        final StatisticsDTO statistics;
+        final long computedAt;
+        // first millisecond the oldest bucket is out of the window
+        final long validUntil;
+        // store version read, other aggregates may have folded in writes since
+        final long version;
+        final String etag;
+        // JSON of the statistics, encoded by the first read asking for it
+        volatile EncodedStatistics encoded;
+
+        Snapshot(StatisticsDTO statistics, long computedAt, long validUntil, long version, String etag) {
+            this.statistics = statistics;
+            this.computedAt = computedAt;
+            this.validUntil = validUntil;
+            this.version = version;
+            this.etag = etag;
         }
     }
 
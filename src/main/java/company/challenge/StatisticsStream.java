@@ -0,0 +1,107 @@
+package company.challenge;
+
+import company.challenge.dto.StatisticsDTO;
+import company.challenge.validation.TooManySubscribersException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pushes GET /statistics to subscribers as server-sent events.
+ * <p>
+ * The statistics are computed once per statistics.stream.interval for all subscribers, and only sent when they
+ * changed; a new subscriber gets the latest ones right away. A subscriber which reads slower than the tick
+ * only gets the latest statistics once it catches up, so it never holds more than one pending event.
+ * The tick stops while nobody listens.
+ */
+@Component
+class StatisticsStream implements MeterBinder {
+
+    static final String EVENT = "statistics";
+
+    private final StatisticsService service;
+
+    private final int maxSubscribers;
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    private final LongAdder rejectedSubscribers = new LongAdder();
+
+    private final Flux<StatisticsDTO> updates;
+
+    // merges the statistics of every node when statistics.cluster.peers is set
+    private ClusterCoordinator coordinator;
+
+    @Autowired
+    public StatisticsStream(StatisticsService service,
+                            @Value("${statistics.stream.interval:1s}") Duration interval,
+                            @Value("${statistics.stream.max-subscribers:1000}") int maxSubscribers) {
+        this.service = service;
+        this.maxSubscribers = maxSubscribers;
+        // the cluster refresh blocks on peers, so ticks run off the event loop
+        this.updates = Flux.interval(Duration.ZERO, interval, Schedulers.boundedElastic())
+            .onBackpressureDrop()
+            .map(tick -> current())
+            .distinctUntilChanged()
+            .replay(1)
+            .refCount();
+    }
+
+    @Autowired(required = false)
+    void setCoordinator(ClusterCoordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("statistics.stream.subscribers", subscribers, AtomicInteger::get)
+            .description("Clients subscribed to the statistics stream")
+            .register(registry);
+        FunctionCounter.builder("statistics.stream.rejected", rejectedSubscribers, LongAdder::sum)
+            .description("Clients rejected over the subscriber limit")
+            .register(registry);
+    }
+
+    /**
+     * @return events for a new subscriber, which is counted from its subscription until it cancels,
+     * failing with {@link TooManySubscribersException} when statistics.stream.max-subscribers are already subscribed
+     */
+    public Flux<ServerSentEvent<StatisticsDTO>> subscribe() {
+        // counted on subscription, so a stream which is never subscribed takes no slot
+        return Flux.defer(() -> {
+            if (subscribers.incrementAndGet() > maxSubscribers) {
+                subscribers.decrementAndGet();
+                rejectedSubscribers.increment();
+                return Flux.error(new TooManySubscribersException(
+                    "Statistics stream is limited to " + maxSubscribers + " subscribers"));
+            }
+            return updates
+                .onBackpressureLatest()
+                .map(statistics -> ServerSentEvent.builder(statistics).event(EVENT).build())
+                .doFinally(signal -> subscribers.decrementAndGet());
+        });
+    }
+
+    public int getSubscribers() {
+        return subscribers.get();
+    }
+
+    public long getRejectedSubscribers() {
+        return rejectedSubscribers.sum();
+    }
+
+    private StatisticsDTO current() {
+        return coordinator != null ? coordinator.getStatistics() : service.getStatistics();
+    }
+}
@@ -1,11 +1,12 @@
 package company.challenge;
 
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
-
 public class TimeUtil {
     public static long alignMillisToSeconds(long ts){
-        return Instant.ofEpochMilli(ts).truncatedTo(ChronoUnit.SECONDS).toEpochMilli();
+        return alignMillis(ts, 1000L);
+    }
+
+    public static long alignMillis(long ts, long granularity){
+        return ts - Math.floorMod(ts, granularity);
     }
     
 }
@@ -0,0 +1,154 @@
+package company.challenge;
+
+import company.challenge.domain.Statistics;
+import company.challenge.dto.BatchResultDTO;
+import company.challenge.dto.TransactionDTO;
+import company.challenge.ingest.AmountScale;
+import company.challenge.ingest.TimestampPolicy;
+import company.challenge.journal.TransactionJournal;
+import company.challenge.store.DimensionStore;
+import company.challenge.store.QuantileSketch;
+import company.challenge.store.WindowStore;
+import company.challenge.validation.InvalidAmountException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pre-aggregates a batch of transactions per bucket, so every bucket is merged into the store once.
+ * Timestamps are admitted by the {@link TimestampPolicy} against the clock as it was when the batch was started.
+ * With fixed-point amounts, an amount which does not fit in minor units is rejected like a late one.
+ * Keyed transactions are counted per key on commit, only if their bucket was merged into the store.
+ */
+@Slf4j
+class TransactionBatch {
+
+    // bins of every bucket when the store keeps no percentiles
+    private static final long[] NO_BINS = new long[0];
+
+    private final WindowStore store;
+
+    private final DimensionStore dimensions;
+
+    // null unless journaling is enabled
+    private final TransactionJournal journal;
+
+    private final TimestampPolicy timestampPolicy;
+
+    // null unless amounts are fixed-point
+    private final AmountScale amountScale;
+
+    private final long now;
+
+    private final Map<Long, Statistics> buckets = new HashMap<>();
+
+    private final Map<Long, long[]> bins = new HashMap<>();
+
+    private final List<KeyedTransaction> keyed = new ArrayList<>();
+
+    private long accepted;
+
+    private long rejected;
+
+    TransactionBatch(WindowStore store, DimensionStore dimensions, TransactionJournal journal,
+                     TimestampPolicy timestampPolicy, AmountScale amountScale, long now) {
+        this.store = store;
+        this.dimensions = dimensions;
+        this.journal = journal;
+        this.timestampPolicy = timestampPolicy;
+        this.amountScale = amountScale;
+        this.now = now;
+    }
+
+    public void add(TransactionDTO transactionDTO) {
+        add(transactionDTO.getAmount(), transactionDTO.getTimestamp(), transactionDTO.getKey());
+    }
+
+    /**
+     * @param dimensionKey transaction key, or null if it has none
+     */
+    public void add(double amount, long timestamp, String dimensionKey) {
+        if (amountScale == null) {
+            add(amount, 0, timestamp, dimensionKey);
+            return;
+        }
+        long units;
+        try {
+            units = amountScale.toUnits(amount);
+        } catch (InvalidAmountException e) {
+            log.debug(e.getMessage());
+            rejected++;
+            return;
+        }
+        add(amountScale.toAmount(units), units, timestamp, dimensionKey);
+    }
+
+    /**
+     * @param units amount in minor units when amounts are fixed-point, 0 otherwise
+     */
+    void add(double amount, long units, long timestamp, String dimensionKey) {
+        long admitted = timestampPolicy.admit(timestamp, now);
+        if (admitted == TimestampPolicy.REJECTED) {
+            rejected++;
+            return;
+        }
+        long key = store.alignToBucket(admitted);
+        buckets.computeIfAbsent(key, k -> Statistics.empty()).add(amount, units);
+        if (store.hasPercentiles()) {
+            bins.computeIfAbsent(key, k -> new long[QuantileSketch.BINS])[QuantileSketch.binOf(amount)]++;
+        }
+        if (dimensionKey != null) {
+            keyed.add(new KeyedTransaction(dimensionKey, key, admitted, amount, units));
+        }
+        accepted++;
+    }
+
+    public BatchResultDTO commit() {
+        Set<Long> lostBuckets = new HashSet<>();
+        buckets.forEach((key, statistics) -> {
+            long[] bucketBins = bins.getOrDefault(key, NO_BINS);
+            if (!store.merge(key, statistics, bucketBins)) {
+                log.debug("Bucket for {} is already reused by a newer period", key);
+                accepted -= statistics.getCount();
+                rejected += statistics.getCount();
+                lostBuckets.add(key);
+            } else if (journal != null) {
+                journal.append(key, statistics, bucketBins);
+            }
+        });
+        for (KeyedTransaction transaction : keyed) {
+            if (!lostBuckets.contains(transaction.bucketKey)) {
+                dimensions.add(transaction.key, transaction.timestamp, transaction.amount, transaction.units);
+            }
+        }
+        buckets.clear();
+        bins.clear();
+        keyed.clear();
+
+        BatchResultDTO result = new BatchResultDTO();
+        result.setAccepted(accepted);
+        result.setRejected(rejected);
+        return result;
+    }
+
+    private static final class KeyedTransaction {
+        final String key;
+        final long bucketKey;
+        final long timestamp;
+        final double amount;
+        final long units;
+
+        KeyedTransaction(String key, long bucketKey, long timestamp, double amount, long units) {
+            this.key = key;
+            this.bucketKey = bucketKey;
+            this.timestamp = timestamp;
+            this.amount = amount;
+            this.units = units;
+        }
+    }
+}
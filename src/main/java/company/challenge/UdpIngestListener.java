@@ -0,0 +1,180 @@
+package company.challenge;
+
+import company.challenge.dto.BatchResultDTO;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accepts transactions as UDP datagrams next to the HTTP API,
+ * for producers which send more than JSON parsing keeps up with.
+ * <p>
+ * A datagram holds one or more 16 byte records, each a big-endian double amount followed by a long timestamp
+ * in epoch millis. Records are decoded straight from a reused direct buffer and every datagram is stored as one
+ * {@link TransactionBatch}, so the window check is the same as for POST /transactions.
+ * A datagram whose length is not a multiple of 16 is dropped whole and counted as malformed records,
+ * a record with a NaN or infinite amount is dropped on its own.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "statistics.udp.enabled", havingValue = "true")
+class UdpIngestListener implements SmartLifecycle, MeterBinder {
+
+    static final int RECORD_SIZE = 16;
+
+    // largest UDP payload over IPv4
+    private static final int MAX_DATAGRAM_SIZE = 65_507;
+
+    private final StatisticsService service;
+
+    private final InetSocketAddress address;
+
+    private final int receiveBufferSize;
+
+    private final LongAdder acceptedRecords = new LongAdder();
+
+    private final LongAdder lateRecords = new LongAdder();
+
+    private final LongAdder malformedRecords = new LongAdder();
+
+    private volatile DatagramChannel channel;
+
+    @Autowired
+    public UdpIngestListener(StatisticsService service,
+                             @Value("${statistics.udp.host:0.0.0.0}") String host,
+                             @Value("${statistics.udp.port:9999}") int port,
+                             @Value("${statistics.udp.receive-buffer:4MB}") DataSize receiveBufferSize) {
+        this.service = service;
+        this.address = new InetSocketAddress(host, port);
+        this.receiveBufferSize = Math.toIntExact(receiveBufferSize.toBytes());
+    }
+
+    @Override
+    public void start() {
+        try {
+            DatagramChannel bound = DatagramChannel.open();
+            // a burst queues in the socket buffer while the previous datagram is stored
+            bound.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            bound.bind(address);
+            channel = bound;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to listen on udp " + address, e);
+        }
+        Thread receiver = new Thread(this::receive, "udp-ingest");
+        receiver.setDaemon(true);
+        receiver.start();
+        log.info("Accepting transactions on udp {}", address);
+    }
+
+    @Override
+    public void stop() {
+        DatagramChannel current = channel;
+        channel = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.warn("Failed to close udp {}", address, e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return channel != null;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("statistics.udp.records", acceptedRecords, LongAdder::sum)
+            .description("Records received over udp")
+            .tag("result", "accepted")
+            .register(registry);
+        FunctionCounter.builder("statistics.udp.records", lateRecords, LongAdder::sum)
+            .description("Records received over udp")
+            .tag("result", "late")
+            .register(registry);
+        FunctionCounter.builder("statistics.udp.records", malformedRecords, LongAdder::sum)
+            .description("Records received over udp")
+            .tag("result", "malformed")
+            .register(registry);
+    }
+
+    /**
+     * @return address the listener is bound to, null while stopped
+     */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        DatagramChannel current = channel;
+        return current != null ? (InetSocketAddress) current.getLocalAddress() : null;
+    }
+
+    public long getAcceptedRecords() {
+        return acceptedRecords.sum();
+    }
+
+    public long getLateRecords() {
+        return lateRecords.sum();
+    }
+
+    public long getMalformedRecords() {
+        return malformedRecords.sum();
+    }
+
+    /**
+     * Decodes and stores the records between the position and the limit of the buffer.
+     */
+    void accept(ByteBuffer datagram) {
+        int length = datagram.remaining();
+        if (length % RECORD_SIZE != 0) {
+            malformedRecords.add((length + RECORD_SIZE - 1) / RECORD_SIZE);
+            return;
+        }
+        TransactionBatch batch = service.newBatch();
+        while (datagram.remaining() >= RECORD_SIZE) {
+            double amount = datagram.getDouble();
+            long timestamp = datagram.getLong();
+            if (!Double.isFinite(amount)) {
+                malformedRecords.increment();
+            } else {
+                batch.add(amount, timestamp, null);
+            }
+        }
+        BatchResultDTO result = batch.commit();
+        acceptedRecords.add(result.getAccepted());
+        lateRecords.add(result.getRejected());
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        DatagramChannel current;
+        while ((current = channel) != null) {
+            buffer.clear();
+            try {
+                current.receive(buffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("Failed to receive on udp {}", address, e);
+                continue;
+            }
+            buffer.flip();
+            accept(buffer);
+        }
+    }
+}
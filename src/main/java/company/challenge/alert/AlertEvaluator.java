@@ -0,0 +1,100 @@
+package company.challenge.alert;
+
+import company.challenge.domain.Statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evaluates alert rules on the aggregates of their windows and sends an event when a rule starts crossing its
+ * threshold, then again once it stops. Rules sharing a window share its aggregate, so an evaluation costs
+ * rules + distinct windows whatever the transaction rate.
+ * <p>
+ * Evaluations must not run concurrently, state is read from any thread.
+ */
+public class AlertEvaluator {
+
+    private final List<AlertRule> rules;
+
+    private final AlertSink sink;
+
+    // distinct windows of the rules, aggregated together before each evaluation
+    private final long[] windowMillis;
+
+    // index into windowMillis per rule
+    private final int[] windows;
+
+    private final boolean[] firing;
+
+    private volatile int firingRules;
+
+    private final LongAdder events = new LongAdder();
+
+    public AlertEvaluator(List<AlertRule> rules, AlertSink sink) {
+        this.rules = new ArrayList<>(rules);
+        this.sink = sink;
+        this.windows = new int[rules.size()];
+        this.firing = new boolean[rules.size()];
+        List<Long> distinct = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            long window = rules.get(i).getWindowMillis();
+            int index = distinct.indexOf(window);
+            if (index < 0) {
+                index = distinct.size();
+                distinct.add(window);
+            }
+            windows[i] = index;
+        }
+        this.windowMillis = distinct.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    public List<AlertRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return windows to aggregate for {@link #evaluate(long, Statistics[])}, in order
+     */
+    public long[] getWindowMillis() {
+        return windowMillis.clone();
+    }
+
+    /**
+     * @param timestamp  epoch millis the windows end at
+     * @param statistics aggregates of {@link #getWindowMillis()}, in the same order
+     * @return number of events sent
+     */
+    public int evaluate(long timestamp, Statistics[] statistics) {
+        int sent = 0;
+        for (int i = 0; i < rules.size(); i++) {
+            AlertRule rule = rules.get(i);
+            double value = rule.valueOf(statistics[windows[i]]);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            boolean breached = rule.isBreached(value);
+            if (breached == firing[i]) {
+                continue;
+            }
+            firing[i] = breached;
+            firingRules += breached ? 1 : -1;
+            events.increment();
+            sent++;
+            sink.send(new AlertEvent(rule.getName(), rule.getExpression(),
+                breached ? AlertEvent.FIRING : AlertEvent.RESOLVED, value, rule.getThreshold(), timestamp));
+        }
+        return sent;
+    }
+
+    /**
+     * @return rules currently firing
+     */
+    public int getFiringRules() {
+        return firingRules;
+    }
+
+    public long getEvents() {
+        return events.sum();
+    }
+}
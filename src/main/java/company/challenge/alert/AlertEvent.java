@@ -0,0 +1,22 @@
+package company.challenge.alert;
+
+import lombok.Value;
+
+/**
+ * A rule which started or stopped crossing its threshold.
+ */
+@Value
+public class AlertEvent {
+    public static final String FIRING = "firing";
+    public static final String RESOLVED = "resolved";
+
+    String rule;
+    String expression;
+    // FIRING or RESOLVED
+    String state;
+    // statistic of the window the rule was evaluated on
+    double value;
+    double threshold;
+    // epoch millis of the evaluation
+    long timestamp;
+}
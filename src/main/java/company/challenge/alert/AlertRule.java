@@ -0,0 +1,142 @@
+package company.challenge.alert;
+
+import company.challenge.domain.Statistics;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Threshold on a statistic of the trailing window, e.g. "count > 1000 over 10s" or "avg < 5 over 60s".
+ * <p>
+ * The statistic is one of count, sum, avg, min, max, p50, p95 or p99, compared with &gt;, &gt;=, &lt; or &lt;=.
+ * An empty window has no avg, min, max or quantiles, so rules on those neither fire nor resolve without transactions.
+ */
+public class AlertRule {
+
+    private static final Pattern EXPRESSION = Pattern.compile(
+        "(count|sum|avg|min|max|p50|p95|p99)\\s*(>=|<=|>|<)\\s*(\\S+)\\s+over\\s+(\\S+)");
+
+    private final String name;
+
+    private final String expression;
+
+    private final String statistic;
+
+    private final String comparison;
+
+    private final double threshold;
+
+    private final long windowMillis;
+
+    private AlertRule(String name, String expression, String statistic, String comparison, double threshold,
+                      long windowMillis) {
+        this.name = name;
+        this.expression = expression;
+        this.statistic = statistic;
+        this.comparison = comparison;
+        this.threshold = threshold;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * @param rule expression, optionally named as "spike: count &gt; 1000 over 10s", named by the expression otherwise
+     * @throws IllegalArgumentException if the rule is malformed
+     */
+    public static AlertRule parse(String rule) {
+        String name = null;
+        String expression = rule.trim();
+        int colon = expression.indexOf(':');
+        if (colon >= 0) {
+            name = expression.substring(0, colon).trim();
+            expression = expression.substring(colon + 1).trim();
+        }
+        Matcher matcher = EXPRESSION.matcher(expression);
+        if (!matcher.matches() || (name != null && name.isEmpty())) {
+            throw new IllegalArgumentException("Malformed alert rule '" + rule
+                + "', expected [name:] statistic comparison threshold over window, e.g. count > 1000 over 10s");
+        }
+        double threshold;
+        Duration window;
+        try {
+            threshold = Double.parseDouble(matcher.group(3));
+            window = DurationStyle.detectAndParse(matcher.group(4));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed alert rule '" + rule + "': " + e.getMessage());
+        }
+        if (!Double.isFinite(threshold) || window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Alert rule '" + rule + "' needs a finite threshold and a positive window");
+        }
+        return new AlertRule(name != null ? name : expression, expression, matcher.group(1), matcher.group(2),
+            threshold, window.toMillis());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * @return the statistic the rule is on, NaN if the window has none
+     */
+    public double valueOf(Statistics statistics) {
+        switch (statistic) {
+            case "count":
+                return statistics.getCount();
+            case "sum":
+                return statistics.getSum();
+            default:
+                break;
+        }
+        if (statistics.getCount() == 0) {
+            return Double.NaN;
+        }
+        switch (statistic) {
+            case "avg":
+                return statistics.getAvg();
+            case "min":
+                return statistics.getMin();
+            case "max":
+                return statistics.getMax();
+            case "p50":
+                return statistics.getP50();
+            case "p95":
+                return statistics.getP95();
+            default:
+                return statistics.getP99();
+        }
+    }
+
+    /**
+     * @return whether the value crosses the threshold, never for NaN
+     */
+    public boolean isBreached(double value) {
+        switch (comparison) {
+            case ">":
+                return value > threshold;
+            case ">=":
+                return value >= threshold;
+            case "<":
+                return value < threshold;
+            default:
+                return value <= threshold;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name.equals(expression) ? expression : name + ": " + expression;
+    }
+}
@@ -0,0 +1,9 @@
+package company.challenge.alert;
+
+/**
+ * Receives the events of {@link AlertEvaluator}, on the evaluating thread, so it must not wait on slow receivers.
+ */
+public interface AlertSink {
+
+    void send(AlertEvent event);
+}
@@ -0,0 +1,19 @@
+package company.challenge.alert;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Logs firing alerts as warnings and resolved ones as info.
+ */
+@Slf4j
+public class LogAlertSink implements AlertSink {
+
+    @Override
+    public void send(AlertEvent event) {
+        if (AlertEvent.FIRING.equals(event.getState())) {
+            log.warn("Alert {} firing: {} is {}", event.getRule(), event.getExpression(), event.getValue());
+        } else {
+            log.info("Alert {} resolved: {} is {}", event.getRule(), event.getExpression(), event.getValue());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package company.challenge.alert;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Posts every event as a JSON {@link AlertEvent} to a webhook, without waiting for the response.
+ * Events which fail or time out are logged and counted, not retried.
+ */
+@Slf4j
+public class WebhookAlertSink implements AlertSink {
+
+    private final URI url;
+
+    private final Duration timeout;
+
+    private final ObjectMapper objectMapper;
+
+    private final HttpClient client;
+
+    private final LongAdder failures = new LongAdder();
+
+    public WebhookAlertSink(URI url, Duration timeout, ObjectMapper objectMapper) {
+        this.url = url;
+        this.timeout = timeout;
+        this.objectMapper = objectMapper;
+        this.client = HttpClient.newBuilder().connectTimeout(timeout).build();
+    }
+
+    @Override
+    public void send(AlertEvent event) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(event);
+        } catch (JsonProcessingException e) {
+            failures.increment();
+            log.warn("Dropping alert {}: {}", event.getRule(), e.getMessage());
+            return;
+        }
+        HttpRequest request = HttpRequest.newBuilder(url)
+            .timeout(timeout)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+            .build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+            .whenComplete((response, e) -> {
+                if (e != null || response.statusCode() / 100 != 2) {
+                    failures.increment();
+                    log.warn("Alert {} {} not delivered to {}: {}", event.getRule(), event.getState(), url,
+                        e != null ? e.getMessage() : "status " + response.statusCode());
+                }
+            });
+    }
+
+    /**
+     * @return events which could not be serialized, failed or were answered with a non 2xx status
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+}
@@ -5,8 +5,60 @@ import lombok.Data;
 @Data
 public class Statistics {
     double sum;
+    // exact sum in minor units when amounts are fixed-point, see company.challenge.ingest.AmountScale, 0 otherwise
+    long units;
     double avg;
     double max;
     double min;
     long count;
+    double p50;
+    double p95;
+    double p99;
+
+    /**
+     * @return statistics of no amounts yet, with min and max ready to be merged into
+     */
+    public static Statistics empty() {
+        Statistics statistics = new Statistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    /**
+     * Resets to the statistics of no amounts, see {@link #empty()}.
+     */
+    public void clear() {
+        sum = 0;
+        units = 0;
+        avg = 0;
+        max = Double.NEGATIVE_INFINITY;
+        min = Double.POSITIVE_INFINITY;
+        count = 0;
+        p50 = 0;
+        p95 = 0;
+        p99 = 0;
+    }
+
+    /**
+     * @param units amount in minor units when amounts are fixed-point, 0 otherwise
+     */
+    public void add(double amount, long units) {
+        merge(amount, units, 1, amount, amount);
+    }
+
+    /**
+     * Merges the sum, units, count, min and max of other amounts in, the one merge every aggregate of buckets
+     * applies. Avg and percentiles are left to the caller.
+     */
+    public void merge(double sum, long units, long count, double min, double max) {
+        this.sum += sum;
+        this.units += units;
+        this.count += count;
+        this.min = Math.min(this.min, min);
+        this.max = Math.max(this.max, max);
+    }
+
+    public void merge(Statistics other) {
+        merge(other.sum, other.units, other.count, other.min, other.max);
+    }
 }
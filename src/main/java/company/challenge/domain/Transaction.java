@@ -1,10 +0,0 @@
-package company.challenge.domain;
-
-
-import lombok.Data;
-
-@Data
-public class Transaction {
-    double amount;
-    long timestamp;
-}
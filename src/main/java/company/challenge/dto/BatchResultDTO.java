@@ -0,0 +1,9 @@
+package company.challenge.dto;
+
+import lombok.Data;
+
+@Data
+public class BatchResultDTO {
+    long accepted;
+    long rejected;
+}
@@ -0,0 +1,9 @@
+package company.challenge.dto;
+
+import lombok.Value;
+
+@Value
+public class KeyStatisticsDTO {
+    String key;
+    StatisticsDTO statistics;
+}
@@ -1,12 +1,16 @@
 package company.challenge.dto;
 
-import lombok.Data;
+import lombok.Value;
 
-@Data
+@Value
 public class StatisticsDTO {
-    double sum;
-    double avg;
+    // BigDecimal in fixed-point mode, Double otherwise and for sums beyond a double, rendered as JSON numbers either way
+    Number sum;
+    Number avg;
     double max;
     double min;
     long count;
+    double p50;
+    double p95;
+    double p99;
 }
@@ -0,0 +1,128 @@
+package company.challenge.ingest;
+
+import company.challenge.validation.InvalidAmountException;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-point amounts: every amount is also taken as a whole number of minor units, e.g. cents for scale 2,
+ * and buckets add those up in a long next to the double sum, so sums are exact instead of drifting
+ * with every addition.
+ * <p>
+ * Amounts with more decimals than the scale are rounded half-even. Sums wrap on overflow, which the double sum
+ * of the same amounts detects: a result the double puts beyond 2^62 units falls back to the double sum
+ * and is counted, see {@link #getOverflows()}.
+ */
+public class AmountScale {
+
+    private static final int MAX_SCALE = 18;
+
+    // an exact sum is trusted while the double sum, off by far less than its own magnitude, stays below
+    private static final double MAX_EXACT_UNITS = 0x1p62;
+
+    // scaled amounts up to 2^32 are within a millionth of the exact decimal, so only halves need a closer look
+    private static final double MAX_FAST_UNITS = 0x1p32;
+
+    private static final double TIE_TOLERANCE = 1e-5;
+
+    private final int scale;
+
+    private final double factor;
+
+    private final LongAdder overflows = new LongAdder();
+
+    /**
+     * @param scale number of decimals kept, 2 for cents
+     */
+    public AmountScale(int scale) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Scale must be within [0, " + MAX_SCALE + "]");
+        }
+        this.scale = scale;
+        this.factor = Math.pow(10, scale);
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Rounds the decimal the amount was parsed from, i.e. the shortest decimal which parses back into it.
+     *
+     * @return amount in minor units
+     * @throws InvalidAmountException if the amount is not finite or does not fit in a long of minor units
+     */
+    public long toUnits(double amount) {
+        double scaled = amount * factor;
+        double rounded = Math.rint(scaled);
+        if (Math.abs(scaled) < MAX_FAST_UNITS && Math.abs(Math.abs(scaled - rounded) - 0.5) > TIE_TOLERANCE) {
+            return (long) rounded;
+        }
+        if (!Double.isFinite(amount)) {
+            throw new InvalidAmountException("Amount " + amount + " is not a number");
+        }
+        try {
+            return BigDecimal.valueOf(amount).setScale(scale, RoundingMode.HALF_EVEN)
+                .unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new InvalidAmountException("Amount " + amount + " does not fit in minor units");
+        }
+    }
+
+    /**
+     * @return amount of the last object parsed, in minor units read straight from its digits
+     * @throws InvalidAmountException if it does not fit in a long of minor units
+     */
+    public long toUnits(TransactionParser parser) {
+        try {
+            return parser.getAmountUnits(scale);
+        } catch (ArithmeticException e) {
+            throw new InvalidAmountException(e.getMessage());
+        }
+    }
+
+    /**
+     * @return double closest to the amount in minor units, stored for min, max and quantiles
+     */
+    public double toAmount(long units) {
+        return units / factor;
+    }
+
+    /**
+     * @param sum   double sum of the same amounts, to tell a wrapped exact sum
+     * @param units exact sum in minor units
+     * @return exact sum as a {@link BigDecimal}, or the double sum, possibly infinite, once beyond exact sums
+     */
+    public Number toSum(double sum, long units) {
+        if (Math.abs(sum) * factor < MAX_EXACT_UNITS) {
+            return BigDecimal.valueOf(units, scale);
+        }
+        overflows.increment();
+        return sum;
+    }
+
+    /**
+     * @param sum result of {@link #toSum}
+     * @return sum / count rounded half-even to 16 significant digits, a double for a double sum,
+     * 0 without transactions
+     */
+    public Number toAverage(Number sum, long count) {
+        if (count == 0) {
+            return BigDecimal.ZERO;
+        }
+        if (sum instanceof BigDecimal) {
+            return ((BigDecimal) sum).divide(BigDecimal.valueOf(count), MathContext.DECIMAL64);
+        }
+        return sum.doubleValue() / count;
+    }
+
+    /**
+     * @return sums read beyond the range of exact sums, served from the double sum instead
+     */
+    public long getOverflows() {
+        return overflows.sum();
+    }
+}
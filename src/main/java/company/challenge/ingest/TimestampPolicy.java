@@ -0,0 +1,84 @@
+package company.challenge.ingest;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which timestamps are stored, against the shared clock.
+ * <p>
+ * Transactions older than the allowed lateness are rejected. Transactions further ahead of the clock than
+ * the max future skew are either rejected or clamped to it, so a client clock running ahead never writes
+ * beyond the future allowance of the store. Every rejected or clamped transaction is counted.
+ */
+public class TimestampPolicy {
+
+    /**
+     * Returned by {@link #admit} for a transaction which must not be stored, never a valid epoch millis in practice.
+     */
+    public static final long REJECTED = Long.MIN_VALUE;
+
+    private final long allowedLatenessMillis;
+
+    private final long maxFutureSkewMillis;
+
+    private final boolean clampFuture;
+
+    private final LongAdder lateTransactions = new LongAdder();
+
+    private final LongAdder rejectedFutureTransactions = new LongAdder();
+
+    private final LongAdder clampedFutureTransactions = new LongAdder();
+
+    /**
+     * @param clampFuture true to store transactions too far ahead at the max future skew, false to reject them
+     */
+    public TimestampPolicy(long allowedLatenessMillis, long maxFutureSkewMillis, boolean clampFuture) {
+        if (allowedLatenessMillis <= 0 || maxFutureSkewMillis < 0) {
+            throw new IllegalArgumentException("Allowed lateness must be positive, max future skew not negative");
+        }
+        this.allowedLatenessMillis = allowedLatenessMillis;
+        this.maxFutureSkewMillis = maxFutureSkewMillis;
+        this.clampFuture = clampFuture;
+    }
+
+    /**
+     * The timestamp must be younger than now - allowed lateness.
+     *
+     * @return timestamp to store the transaction at, or {@link #REJECTED}
+     */
+    public long admit(long timestamp, long now) {
+        if (timestamp <= now - allowedLatenessMillis) {
+            lateTransactions.increment();
+            return REJECTED;
+        }
+        long latest = now + maxFutureSkewMillis;
+        if (timestamp <= latest) {
+            return timestamp;
+        }
+        if (clampFuture) {
+            clampedFutureTransactions.increment();
+            return latest;
+        }
+        rejectedFutureTransactions.increment();
+        return REJECTED;
+    }
+
+    public long getAllowedLatenessMillis() {
+        return allowedLatenessMillis;
+    }
+
+    public long getMaxFutureSkewMillis() {
+        return maxFutureSkewMillis;
+    }
+
+    public long getLateTransactions() {
+        return lateTransactions.sum();
+    }
+
+    public long getRejectedFutureTransactions() {
+        return rejectedFutureTransactions.sum();
+    }
+
+    public long getClampedFutureTransactions() {
+        return clampedFutureTransactions.sum();
+    }
+}
@@ -0,0 +1,536 @@
+package company.challenge.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Parses a single {"amount":..,"timestamp":..,"key":..} JSON object straight from bytes into primitives,
+ * the optional key is only turned into a String when asked for.
+ * Unknown fields are skipped, missing or null ones stay 0 and numbers may be quoted,
+ * the same way Jackson binds a TransactionDTO.
+ * The amount can also be read in minor units straight from its digits, see {@link #getAmountUnits(int)}.
+ * <p>
+ * Instances keep their read buffer between calls and are not thread-safe.
+ */
+public class TransactionParser {
+
+    public static final int MAX_BODY_SIZE = 64 * 1024;
+
+    private static final byte[] AMOUNT = "amount".getBytes(US_ASCII);
+
+    private static final byte[] TIMESTAMP = "timestamp".getBytes(US_ASCII);
+
+    private static final byte[] KEY = "key".getBytes(US_ASCII);
+
+    // every power of ten up to 1e22 is exact in a double
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    private byte[] buffer = new byte[512];
+
+    private byte[] buf;
+
+    private int pos;
+
+    private int end;
+
+    private double amount;
+
+    private long timestamp;
+
+    // raw key text in buf, keyStart < 0 if missing or null
+    private int keyStart;
+
+    private int keyLength;
+
+    private boolean keyEscaped;
+
+    // raw amount text in buf, amountStart < 0 if missing or null
+    private int amountStart;
+
+    private int amountLength;
+
+    // last number parsed, numberStart < 0 if it was null
+    private int numberStart;
+
+    private int numberLength;
+
+    private double number;
+
+    private long integer;
+
+    private boolean integral;
+
+    private boolean integerOverflow;
+
+    /**
+     * Reads the whole stream into the internal buffer and parses it.
+     *
+     * @return false if the body is malformed or larger than {@link #MAX_BODY_SIZE}
+     */
+    public boolean parse(InputStream in) throws IOException {
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                if (buffer.length >= MAX_BODY_SIZE) {
+                    return false;
+                }
+                byte[] grown = new byte[Math.min(buffer.length * 2, MAX_BODY_SIZE)];
+                System.arraycopy(buffer, 0, grown, 0, length);
+                buffer = grown;
+            }
+        }
+        return parse(buffer, 0, length);
+    }
+
+    /**
+     * @return false if the bytes are not a transaction JSON object
+     */
+    public boolean parse(byte[] bytes, int offset, int length) {
+        buf = bytes;
+        pos = offset;
+        end = offset + length;
+        amount = 0;
+        timestamp = 0;
+        keyStart = -1;
+        amountStart = -1;
+
+        skipWhitespace();
+        if (!consume('{')) {
+            return false;
+        }
+        skipWhitespace();
+        if (consume('}')) {
+            return isAtEnd();
+        }
+        while (true) {
+            skipWhitespace();
+            int nameStart = pos + 1;
+            if (!skipString()) {
+                return false;
+            }
+            int nameLength = pos - 1 - nameStart;
+            skipWhitespace();
+            if (!consume(':')) {
+                return false;
+            }
+            skipWhitespace();
+
+            if (nameEquals(nameStart, nameLength, AMOUNT)) {
+                if (!parseNumberValue()) {
+                    return false;
+                }
+                amount = number;
+                amountStart = numberStart;
+                amountLength = numberLength;
+            } else if (nameEquals(nameStart, nameLength, TIMESTAMP)) {
+                if (!parseNumberValue() || integerOverflow) {
+                    return false;
+                }
+                timestamp = integral ? integer : (long) number;
+            } else if (nameEquals(nameStart, nameLength, KEY)) {
+                if (!parseKeyValue()) {
+                    return false;
+                }
+            } else if (!skipValue()) {
+                return false;
+            }
+
+            skipWhitespace();
+            if (consume(',')) {
+                continue;
+            }
+            return consume('}') && isAtEnd();
+        }
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Reads the amount of the last parsed object as a whole number of minor units, e.g. cents for scale 2,
+     * without going through a double. Amounts with more decimals than the scale are rounded half-even.
+     *
+     * @return amount * 10^scale, 0 if it is missing
+     * @throws ArithmeticException if it does not fit in a long
+     */
+    public long getAmountUnits(int scale) {
+        if (amountStart < 0) {
+            return 0;
+        }
+        int at = amountStart;
+        int until = amountStart + amountLength;
+        boolean negative = buf[at] == '-';
+        if (negative) {
+            at++;
+        }
+        long units = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; at < until; at++) {
+            byte c = buf[at];
+            if (c == '.') {
+                decimals = 0;
+                continue;
+            }
+            // exponents and digits beyond the scale are rounded the slow way
+            if (!isDigit(c) || ++digits > MAX_MANTISSA_DIGITS || (decimals >= 0 && ++decimals > scale)) {
+                return parseUnitsSlow(scale);
+            }
+            units = units * 10 + (c - '0');
+        }
+        for (int i = Math.max(decimals, 0); i < scale; i++) {
+            units = Math.multiplyExact(units, 10);
+        }
+        return negative ? -units : units;
+    }
+
+    /**
+     * Decodes the key of the last parsed object, valid until the next parse.
+     *
+     * @return key or null if it is missing
+     */
+    public String getKey() {
+        if (keyStart < 0) {
+            return null;
+        }
+        String raw = new String(buf, keyStart, keyLength, UTF_8);
+        return keyEscaped ? unescape(raw) : raw;
+    }
+
+    private boolean isAtEnd() {
+        skipWhitespace();
+        return pos == end;
+    }
+
+    /**
+     * Parses a plain or quoted number, null is read as 0.
+     */
+    private boolean parseNumberValue() {
+        if (matchLiteral("null")) {
+            numberStart = -1;
+            number = 0;
+            integer = 0;
+            integral = true;
+            integerOverflow = false;
+            return true;
+        }
+        if (consume('"')) {
+            return parseNumber() && consume('"');
+        }
+        return parseNumber();
+    }
+
+    /**
+     * Parses a string or a number taken as its text, null leaves the key missing.
+     */
+    private boolean parseKeyValue() {
+        if (matchLiteral("null")) {
+            keyStart = -1;
+            return true;
+        }
+        if (pos < end && buf[pos] == '"') {
+            int start = pos + 1;
+            if (!skipString()) {
+                return false;
+            }
+            keyStart = start;
+            keyLength = pos - 1 - start;
+            keyEscaped = false;
+            for (int i = start; i < pos - 1; i++) {
+                if (buf[i] == '\\') {
+                    keyEscaped = true;
+                    break;
+                }
+            }
+            return true;
+        }
+        int start = pos;
+        if (!parseNumber()) {
+            return false;
+        }
+        keyStart = start;
+        keyLength = pos - start;
+        keyEscaped = false;
+        return true;
+    }
+
+    private boolean parseNumber() {
+        int start = pos;
+        numberStart = start;
+        boolean negative = consume('-');
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean truncated = false;
+        integral = true;
+        integerOverflow = false;
+
+        int integerStart = pos;
+        while (pos < end && isDigit(buf[pos])) {
+            if (digits < MAX_MANTISSA_DIGITS) {
+                mantissa = mantissa * 10 + (buf[pos] - '0');
+                digits += mantissa == 0 ? 0 : 1;
+            } else {
+                truncated = true;
+            }
+            pos++;
+        }
+        if (pos == integerStart) {
+            return false;
+        }
+        if (consume('.')) {
+            integral = false;
+            int fractionStart = pos;
+            while (pos < end && isDigit(buf[pos])) {
+                if (digits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + (buf[pos] - '0');
+                    digits += mantissa == 0 ? 0 : 1;
+                    exponent--;
+                } else {
+                    truncated = true;
+                }
+                pos++;
+            }
+            if (pos == fractionStart) {
+                return false;
+            }
+        }
+        if (pos < end && (buf[pos] == 'e' || buf[pos] == 'E')) {
+            integral = false;
+            pos++;
+            boolean negativeExponent = consume('-');
+            if (!negativeExponent) {
+                consume('+');
+            }
+            int exponentStart = pos;
+            int value = 0;
+            while (pos < end && isDigit(buf[pos])) {
+                value = Math.min(value * 10 + (buf[pos] - '0'), 10_000);
+                pos++;
+            }
+            if (pos == exponentStart) {
+                return false;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        numberLength = pos - start;
+
+        if (truncated) {
+            return parseSlow(start);
+        }
+        integer = negative ? -mantissa : mantissa;
+        if (mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            // both operands are exact, so a single multiplication or division rounds correctly
+            double value = exponent < 0
+                ? mantissa / POWERS_OF_TEN[-exponent]
+                : mantissa * POWERS_OF_TEN[exponent];
+            number = negative ? -value : value;
+            return true;
+        }
+        return parseSlow(start);
+    }
+
+    // rare numbers with too many digits or a large exponent
+    private boolean parseSlow(int start) {
+        String text = new String(buf, start, pos - start, US_ASCII);
+        number = Double.parseDouble(text);
+        if (integral) {
+            try {
+                integer = Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                integerOverflow = true;
+            }
+        }
+        return true;
+    }
+
+    private long parseUnitsSlow(int scale) {
+        BigDecimal decimal = new BigDecimal(new String(buf, amountStart, amountLength, US_ASCII));
+        // digits before the point, checked first so a huge exponent is never expanded
+        int magnitude = decimal.precision() - decimal.scale();
+        if (magnitude > MAX_MANTISSA_DIGITS + 1) {
+            throw new ArithmeticException("Amount " + decimal + " does not fit in minor units");
+        }
+        if (magnitude < -scale) {
+            return 0;
+        }
+        return decimal.setScale(scale, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    private boolean skipValue() {
+        if (pos >= end) {
+            return false;
+        }
+        byte c = buf[pos];
+        if (c == '"') {
+            return skipString();
+        }
+        if (c == '{' || c == '[') {
+            return skipStructure();
+        }
+        if (c == '-' || isDigit(c)) {
+            return parseNumber();
+        }
+        return matchLiteral("true") || matchLiteral("false") || matchLiteral("null");
+    }
+
+    // skips a nested object or array without validating its content
+    private boolean skipStructure() {
+        int depth = 0;
+        while (pos < end) {
+            byte c = buf[pos];
+            if (c == '"') {
+                if (!skipString()) {
+                    return false;
+                }
+                continue;
+            }
+            pos++;
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if ((c == '}' || c == ']') && --depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean skipString() {
+        if (!consume('"')) {
+            return false;
+        }
+        while (pos < end) {
+            byte c = buf[pos++];
+            if (c == '"') {
+                return true;
+            }
+            if (c == '\\') {
+                pos++;
+            } else if (c >= 0 && c < 0x20) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchLiteral(String literal) {
+        int length = literal.length();
+        if (end - pos < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf[pos + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        pos += length;
+        return true;
+    }
+
+    private boolean nameEquals(int start, int length, byte[] name) {
+        if (length != name.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean consume(char c) {
+        if (pos < end && buf[pos] == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte c = buf[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private static String unescape(String raw) {
+        StringBuilder result = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\' || i + 1 == raw.length()) {
+                result.append(c);
+                continue;
+            }
+            char escaped = raw.charAt(++i);
+            switch (escaped) {
+                case 'b':
+                    result.append('\b');
+                    break;
+                case 'f':
+                    result.append('\f');
+                    break;
+                case 'n':
+                    result.append('\n');
+                    break;
+                case 'r':
+                    result.append('\r');
+                    break;
+                case 't':
+                    result.append('\t');
+                    break;
+                case 'u':
+                    int code = i + 4 < raw.length() ? parseHex(raw, i + 1) : -1;
+                    if (code < 0) {
+                        result.append(escaped);
+                    } else {
+                        result.append((char) code);
+                        i += 4;
+                    }
+                    break;
+                default:
+                    result.append(escaped);
+            }
+        }
+        return result.toString();
+    }
+
+    // value of four hex digits or -1
+    private static int parseHex(String text, int start) {
+        int value = 0;
+        for (int i = start; i < start + 4; i++) {
+            int digit = Character.digit(text.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+}
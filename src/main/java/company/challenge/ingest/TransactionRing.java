@@ -0,0 +1,143 @@
+package company.challenge.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of transactions with many producers and a single consumer, kept in primitive arrays
+ * so publishing a transaction allocates nothing.
+ * <p>
+ * Every slot carries a sequence: a producer claims the slot whose sequence equals the tail by moving the tail
+ * past it, writes the fields and then publishes the slot by bumping its sequence, which the consumer waits for.
+ * A full ring makes {@link #offer} fail instead of waiting, so producers can shed the load.
+ * <p>
+ * {@link #close} marks the tail itself, so no producer claims a slot afterwards and the consumer can drain
+ * whatever was claimed before.
+ */
+public class TransactionRing {
+
+    /**
+     * Receives drained transactions on the consumer thread.
+     */
+    public interface Handler {
+        void accept(long timestamp, double amount, long units, String key);
+    }
+
+    // set on the tail once closed, far beyond any position reached
+    private static final long CLOSED = 1L << 62;
+
+    private final int mask;
+
+    private final AtomicLongArray sequences;
+
+    private final long[] timestamps;
+
+    private final double[] amounts;
+
+    private final long[] units;
+
+    private final String[] keys;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    // only moved by the consumer, read by producers for the size
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity transactions held, rounded up to a power of two
+     */
+    public TransactionRing(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be within [1, 2^30]");
+        }
+        int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.timestamps = new long[size];
+        this.amounts = new double[size];
+        this.units = new long[size];
+        this.keys = new String[size];
+    }
+
+    /**
+     * @param key transaction key, or null if it has none
+     * @return false if the ring is full or closed
+     */
+    public boolean offer(long timestamp, double amount, long units, String key) {
+        long position = tail.get();
+        while (true) {
+            if (position >= CLOSED) {
+                return false;
+            }
+            int slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    timestamps[slot] = timestamp;
+                    amounts[slot] = amount;
+                    this.units[slot] = units;
+                    keys[slot] = key;
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (sequence < position) {
+                // the consumer has not freed the slot a lap ago
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Hands published transactions to the handler in the order their slots were claimed,
+     * stopping at the first slot still being written. Must only be called by the consumer thread.
+     *
+     * @return number of transactions drained
+     */
+    public int drain(Handler handler, int max) {
+        long position = head.get();
+        int drained = 0;
+        while (drained < max) {
+            int slot = (int) position & mask;
+            if (sequences.get(slot) != position + 1) {
+                break;
+            }
+            String key = keys[slot];
+            keys[slot] = null;
+            handler.accept(timestamps[slot], amounts[slot], units[slot], key);
+            // free the slot for the producer one lap ahead
+            sequences.set(slot, position + mask + 1);
+            position++;
+            drained++;
+        }
+        head.lazySet(position);
+        return drained;
+    }
+
+    /**
+     * Makes every later {@link #offer} fail, transactions already claimed are still published and drained.
+     */
+    public void close() {
+        tail.accumulateAndGet(CLOSED, (position, closed) -> position | closed);
+    }
+
+    public boolean isClosed() {
+        return tail.get() >= CLOSED;
+    }
+
+    /**
+     * @return transactions claimed and not drained yet, approximate while producers publish
+     */
+    public int size() {
+        return (int) Math.max(0, (tail.get() & ~CLOSED) - head.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
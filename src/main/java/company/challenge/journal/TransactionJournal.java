@@ -0,0 +1,723 @@
+package company.challenge.journal;
+
+import company.challenge.TimeUtil;
+import company.challenge.domain.Statistics;
+import company.challenge.store.QuantileSketch;
+import company.challenge.store.WindowStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only journal of bucket deltas in memory-mapped segment files, replayed into the store on startup.
+ * <p>
+ * Single transactions are summed per bucket into primitive accumulators owned by their writer thread, with plain
+ * writes and no monitor, and {@link #flush} appends each accumulated bucket as one bucket record, the same record
+ * a committed batch appends, so the journal grows by a record per bucket and flush instead of one per transaction.
+ * Every thread has two generations of accumulators: flush switches writers to the other one and waits for a writer
+ * still adding to the previous one before draining it. A transaction whose thread already accumulates four other
+ * buckets, a late one usually, is journaled as a record of its own. Writers reserve a record in the current segment with a single atomic
+ * add and copy it into the mapping, so appends never enter the kernel. A record is in the page cache as soon
+ * as it is written and survives a crash of the process; flush then forces every segment to disk at once
+ * (group commit), so it also survives a crash of the host. Transactions since the last flush are lost by either.
+ * <p>
+ * {@link #compact} rotates to a fresh segment and folds the closed segments and the previous snapshot
+ * into a new snapshot holding one record per bucket still in the window, so a restart replays at most
+ * a window of buckets plus the segments written since the last compaction. The snapshot records the last
+ * segment it covers, so segments a crash left behind between moving the snapshot into place and deleting them
+ * are skipped instead of counted twice.
+ */
+@Slf4j
+public class TransactionJournal implements Closeable {
+
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final VarHandle BUSY;
+
+    static {
+        try {
+            BUSY = MethodHandles.lookup().findVarHandle(Pending.class, "busy", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // version 2 counts negative amounts in bins of their own, files of version 1 are skipped
+    private static final long MAGIC = 0x53_54_41_54_4A_52_4E_02L;
+
+    private static final int FILE_HEADER_BYTES = Long.BYTES;
+
+    // record header: int length, int type published last, 0 while the record is being written
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+
+    // a single transaction, written when its thread has no accumulator left for its bucket
+    private static final int TRANSACTION = 1;
+
+    private static final int BUCKET = 2;
+
+    // rest of a segment the last record did not fit into
+    private static final int PADDING = 3;
+
+    // records of fixed-point amounts, which also carry the exact sum in minor units before the bins
+    private static final int TRANSACTION_UNITS = 4;
+
+    private static final int BUCKET_UNITS = 5;
+
+    // sequence of the last segment a snapshot covers
+    private static final int COVERED = 6;
+
+    private static final int COVERED_BYTES = RECORD_HEADER_BYTES + Long.BYTES;
+
+    // how long compaction waits for a reserved record before giving up on the rest of its segment
+    private static final long COMMIT_TIMEOUT_NANOS = 1_000_000_000L;
+
+    private static final int TRANSACTION_BYTES = RECORD_HEADER_BYTES + 2 * Long.BYTES;
+
+    private static final int BUCKET_BYTES = RECORD_HEADER_BYTES + 6 * Long.BYTES;
+
+    private static final int UNITS_BYTES = Long.BYTES;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final String SNAPSHOT = "snapshot.bin";
+
+    private final Path directory;
+
+    private final long bucketMillis;
+
+    private final int segmentBytes;
+
+    // closed segments not compacted yet, oldest first, guarded by this
+    private final List<Segment> closed = new ArrayList<>();
+
+    private final LongAdder lostRecords = new LongAdder();
+
+    // accumulators of single transactions of every writer thread so far
+    private final List<Pending> writers = new CopyOnWriteArrayList<>();
+
+    private final ThreadLocal<Pending> pending = ThreadLocal.withInitial(this::register);
+
+    // writers add to the accumulators of this generation, flush drains those of the previous one
+    private volatile int generation;
+
+    private volatile Segment current;
+
+    // guarded by this
+    private long nextSequence;
+
+    /**
+     * Opens the journal in the directory, segments left by a previous run are kept for {@link #recover}
+     * and folded into the snapshot by the next {@link #compact}.
+     *
+     * @param bucketMillis bucket length transactions are folded into by compaction
+     */
+    public TransactionJournal(Path directory, long bucketMillis, int segmentBytes) throws IOException {
+        if (bucketMillis <= 0
+            || segmentBytes < FILE_HEADER_BYTES + BUCKET_BYTES + UNITS_BYTES + QuantileSketch.BINS * Long.BYTES) {
+            throw new IllegalArgumentException("Segment of " + segmentBytes + " bytes cannot hold a bucket record");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.bucketMillis = bucketMillis;
+        // records are 8 byte aligned, so a padding header always fits at the end
+        this.segmentBytes = segmentBytes & -Long.BYTES;
+
+        Map<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                segments.put(sequenceOf(file), file);
+            }
+        }
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            closed.add(Segment.open(segment.getValue(), segment.getKey()));
+            nextSequence = segment.getKey() + 1;
+        }
+        // segments the snapshot covers may all be deleted, new ones must not be taken for them
+        nextSequence = Math.max(nextSequence, readCoveredSequence() + 1);
+        current = newSegment();
+    }
+
+    /**
+     * Merges the snapshot and every segment left by a previous run into the store,
+     * dropping buckets which started before the horizon.
+     *
+     * @return number of buckets restored
+     */
+    public synchronized int recover(WindowStore store, long horizonTimestamp) throws IOException {
+        long start = System.nanoTime();
+        Map<Long, Delta> buckets = new HashMap<>();
+        long covered = readSnapshot(buckets);
+        for (Segment segment : closed) {
+            if (segment.sequence > covered) {
+                read(segment.buffer, segment.end, false, buckets);
+            }
+        }
+        int restored = 0;
+        for (Map.Entry<Long, Delta> bucket : buckets.entrySet()) {
+            if (bucket.getKey() >= horizonTimestamp
+                && store.merge(bucket.getKey(), bucket.getValue().toStatistics(), bucket.getValue().bins)) {
+                restored++;
+            }
+        }
+        log.info("Restored {} buckets from {} in {} ms", restored, directory, (System.nanoTime() - start) / 1_000_000);
+        return restored;
+    }
+
+    public void append(long timestamp, double amount) {
+        append(timestamp, amount, 0);
+    }
+
+    /**
+     * Adds the transaction to the accumulator of its bucket, journaled by the next {@link #flush}.
+     *
+     * @param units amount in minor units, 0 unless amounts are fixed-point
+     */
+    public void append(long timestamp, double amount, long units) {
+        long key = TimeUtil.alignMillis(timestamp, bucketMillis);
+        Pending writer = pending.get();
+        // a volatile write before reading the generation, so flush either sees the writer busy or gets the
+        // generation switched before the writer reads it
+        writer.busy = true;
+        boolean added = writer.generations[generation & 1].add(key, amount, units);
+        BUSY.setRelease(writer, false);
+        if (!added) {
+            appendTransaction(timestamp, amount, units);
+        }
+    }
+
+    /**
+     * Journals statistics pre-aggregated for a single bucket as one record.
+     *
+     * @param bins amounts counted per {@link QuantileSketch#binOf(double)}
+     * @return false if the record could not be journaled, see {@link #getLostRecords()}
+     */
+    public boolean append(long bucketKey, Statistics statistics, long[] bins) {
+        int binCount = 0;
+        for (long bin : bins) {
+            if (bin != 0) {
+                binCount++;
+            }
+        }
+        int length = bucketBytes(statistics.getUnits(), binCount);
+        while (true) {
+            Segment segment = current;
+            int at = segment.reserve(length);
+            if (at >= 0) {
+                writeBucket(segment.buffer, at, bucketKey, statistics, bins, binCount);
+                segment.commit(at, length, statistics.getUnits() != 0 ? BUCKET_UNITS : BUCKET);
+                return true;
+            }
+            if (!rotate(segment)) {
+                lostRecords.increment();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Appends the pending deltas of single transactions and forces records written so far to disk.
+     */
+    public synchronized void flush() {
+        int drained = generation;
+        generation = drained + 1;
+        for (Pending writer : writers) {
+            while ((boolean) BUSY.getAcquire(writer)) {
+                Thread.onSpinWait();
+            }
+            drain(writer.generations[drained & 1]);
+            if (!writer.owner.isAlive()) {
+                // nothing adds to it anymore
+                drain(writer.generations[(drained + 1) & 1]);
+                writers.remove(writer);
+            }
+        }
+        current.buffer.force();
+        for (Segment segment : closed) {
+            segment.buffer.force();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the buckets which started at or after the horizon
+     * and deletes the segments it covers.
+     */
+    public synchronized void compact(long horizonTimestamp) throws IOException {
+        if (current.isEmpty() && closed.isEmpty()) {
+            return;
+        }
+        if (!current.isEmpty() && !rotate(current)) {
+            throw new IOException("Cannot open a new segment in " + directory);
+        }
+        Map<Long, Delta> buckets = new HashMap<>();
+        long covered = readSnapshot(buckets);
+        for (Segment segment : closed) {
+            // records of a segment sealed by this run may still be in flight, wait for them
+            if (segment.sequence > covered) {
+                read(segment.buffer, segment.end, !segment.recovered, buckets);
+            }
+        }
+        buckets.keySet().removeIf(key -> key < horizonTimestamp);
+        writeSnapshot(buckets, closed.get(closed.size() - 1).sequence);
+        for (Segment segment : closed) {
+            Files.delete(segment.path);
+        }
+        closed.clear();
+    }
+
+    /**
+     * @return records dropped because a new segment could not be opened
+     */
+    public long getLostRecords() {
+        return lostRecords.sum();
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+    }
+
+    private synchronized boolean rotate(Segment full) {
+        if (current != full) {
+            return true;
+        }
+        try {
+            current = newSegment();
+        } catch (IOException e) {
+            log.error("Cannot open a new journal segment in {}", directory, e);
+            return false;
+        }
+        full.seal();
+        closed.add(full);
+        return true;
+    }
+
+    // guarded by this
+    private Segment newSegment() throws IOException {
+        long sequence = nextSequence++;
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+        return Segment.create(path, sequence, segmentBytes);
+    }
+
+    /**
+     * @return sequence of the last segment the snapshot covers, -1 without a snapshot
+     */
+    private long readSnapshot(Map<Long, Delta> buckets) throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (!Files.exists(snapshot)) {
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                Math.toIntExact(channel.size()), false, buckets);
+        }
+    }
+
+    private long readCoveredSequence() throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (!Files.exists(snapshot)) {
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, READ)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES + COVERED_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // until the first record is read
+            }
+            if (header.hasRemaining() || header.getLong(0) != MAGIC
+                || header.getInt(FILE_HEADER_BYTES + Integer.BYTES) != COVERED) {
+                return -1;
+            }
+            return header.getLong(FILE_HEADER_BYTES + RECORD_HEADER_BYTES);
+        }
+    }
+
+    private void writeSnapshot(Map<Long, Delta> buckets, long coveredSequence) throws IOException {
+        int size = FILE_HEADER_BYTES + COVERED_BYTES;
+        for (Delta delta : buckets.values()) {
+            size += bucketBytes(delta.statistics.getUnits(), delta.binCount());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size + RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(0, MAGIC);
+        int at = FILE_HEADER_BYTES;
+        buffer.putInt(at, COVERED_BYTES);
+        buffer.putInt(at + Integer.BYTES, COVERED);
+        buffer.putLong(at + RECORD_HEADER_BYTES, coveredSequence);
+        at += COVERED_BYTES;
+        for (Map.Entry<Long, Delta> bucket : buckets.entrySet()) {
+            Delta delta = bucket.getValue();
+            Statistics statistics = delta.statistics;
+            int binCount = delta.binCount();
+            int length = bucketBytes(statistics.getUnits(), binCount);
+            writeBucket(buffer, at, bucket.getKey(), statistics, delta.bins, binCount);
+            buffer.putInt(at, length);
+            buffer.putInt(at + Integer.BYTES, statistics.getUnits() != 0 ? BUCKET_UNITS : BUCKET);
+            at += length;
+        }
+
+        Path tmp = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT), ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    private Pending register() {
+        Pending writer = new Pending(Thread.currentThread());
+        writers.add(writer);
+        return writer;
+    }
+
+    // guarded by this
+    private void drain(Accumulators accumulators) {
+        for (int slot = 0; slot < Accumulators.SLOTS; slot++) {
+            if (accumulators.keys[slot] != Accumulators.EMPTY) {
+                append(accumulators.keys[slot], accumulators.statistics[slot], accumulators.bins[slot]);
+                accumulators.reset(slot);
+            }
+        }
+    }
+
+    private void appendTransaction(long timestamp, double amount, long units) {
+        int length = units != 0 ? TRANSACTION_BYTES + UNITS_BYTES : TRANSACTION_BYTES;
+        while (true) {
+            Segment segment = current;
+            int at = segment.reserve(length);
+            if (at >= 0) {
+                segment.buffer.putLong(at + RECORD_HEADER_BYTES, timestamp);
+                segment.buffer.putDouble(at + RECORD_HEADER_BYTES + Long.BYTES, amount);
+                if (units != 0) {
+                    segment.buffer.putLong(at + TRANSACTION_BYTES, units);
+                }
+                segment.commit(at, length, units != 0 ? TRANSACTION_UNITS : TRANSACTION);
+                return;
+            }
+            if (!rotate(segment)) {
+                lostRecords.increment();
+                return;
+            }
+        }
+    }
+
+    private static int bucketBytes(long units, int binCount) {
+        return BUCKET_BYTES + (units != 0 ? UNITS_BYTES : 0) + binCount * Long.BYTES;
+    }
+
+    private static void writeBucket(ByteBuffer buffer, int at, long key, Statistics statistics, long[] bins,
+                                    int binCount) {
+        int field = at + RECORD_HEADER_BYTES;
+        buffer.putLong(field, key);
+        buffer.putLong(field + Long.BYTES, statistics.getCount());
+        buffer.putDouble(field + 2 * Long.BYTES, statistics.getSum());
+        buffer.putDouble(field + 3 * Long.BYTES, statistics.getMin());
+        buffer.putDouble(field + 4 * Long.BYTES, statistics.getMax());
+        buffer.putLong(field + 5 * Long.BYTES, binCount);
+        field += 6 * Long.BYTES;
+        if (statistics.getUnits() != 0) {
+            buffer.putLong(field, statistics.getUnits());
+            field += UNITS_BYTES;
+        }
+        for (int bin = 0; bin < bins.length; bin++) {
+            if (bins[bin] != 0) {
+                // bin index in the top 16 bits, count below
+                buffer.putLong(field, (long) bin << 48 | bins[bin]);
+                field += Long.BYTES;
+            }
+        }
+    }
+
+    /**
+     * @param end  offset the records end before
+     * @param wait wait for records reserved but not committed yet, otherwise they end the file
+     * @return sequence of the last segment covered by a snapshot, -1 for segments
+     */
+    private long read(ByteBuffer source, int end, boolean wait, Map<Long, Delta> buckets) {
+        ByteBuffer buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < FILE_HEADER_BYTES || buffer.getLong(0) != MAGIC) {
+            log.warn("Skipping journal file in {} without a journal header", directory);
+            return -1;
+        }
+        long covered = -1;
+        int at = FILE_HEADER_BYTES;
+        while (at + RECORD_HEADER_BYTES <= end) {
+            int type = wait ? awaitCommit(buffer, at) : buffer.getInt(at + Integer.BYTES);
+            int length = buffer.getInt(at);
+            if (type == 0 || length < RECORD_HEADER_BYTES || length > end - at) {
+                // end of the records, or a record torn by a crash while it was being written
+                break;
+            }
+            if (!isIntact(buffer, at, type, length)) {
+                log.warn("Record at {} of a journal file in {} is corrupt, skipping the rest of the file", at, directory);
+                break;
+            }
+            int field = at + RECORD_HEADER_BYTES;
+            if (type == COVERED) {
+                covered = buffer.getLong(field);
+            } else if (type == TRANSACTION || type == TRANSACTION_UNITS) {
+                long key = TimeUtil.alignMillis(buffer.getLong(field), bucketMillis);
+                long units = type == TRANSACTION_UNITS ? buffer.getLong(field + 2 * Long.BYTES) : 0;
+                buckets.computeIfAbsent(key, k -> new Delta()).add(buffer.getDouble(field + Long.BYTES), units);
+            } else if (type == BUCKET || type == BUCKET_UNITS) {
+                long key = TimeUtil.alignMillis(buffer.getLong(field), bucketMillis);
+                Delta delta = buckets.computeIfAbsent(key, k -> new Delta());
+                long units = type == BUCKET_UNITS ? buffer.getLong(field + 6 * Long.BYTES) : 0;
+                delta.statistics.merge(buffer.getDouble(field + 2 * Long.BYTES), units,
+                    buffer.getLong(field + Long.BYTES), buffer.getDouble(field + 3 * Long.BYTES),
+                    buffer.getDouble(field + 4 * Long.BYTES));
+                long binCount = buffer.getLong(field + 5 * Long.BYTES);
+                int binsAt = type == BUCKET_UNITS ? 7 : 6;
+                for (int i = 0; i < binCount; i++) {
+                    long packed = buffer.getLong(field + (binsAt + i) * Long.BYTES);
+                    delta.bins[(int) (packed >>> 48)] += packed & 0xFFFF_FFFF_FFFFL;
+                }
+            }
+            at += length;
+        }
+        return covered;
+    }
+
+    /**
+     * @return whether the fields of the record fit in its length and its bins are within the sketch
+     */
+    private static boolean isIntact(ByteBuffer buffer, int at, int type, int length) {
+        switch (type) {
+            case PADDING:
+                return true;
+            case COVERED:
+                return length >= COVERED_BYTES;
+            case TRANSACTION:
+                return length >= TRANSACTION_BYTES;
+            case TRANSACTION_UNITS:
+                return length >= TRANSACTION_BYTES + UNITS_BYTES;
+            case BUCKET:
+            case BUCKET_UNITS:
+                int binsAt = at + BUCKET_BYTES + (type == BUCKET_UNITS ? UNITS_BYTES : 0);
+                if (binsAt > at + length) {
+                    return false;
+                }
+                long binCount = buffer.getLong(at + RECORD_HEADER_BYTES + 5 * Long.BYTES);
+                if (binCount < 0 || binCount > (at + length - binsAt) / Long.BYTES) {
+                    return false;
+                }
+                for (int i = 0; i < binCount; i++) {
+                    long bin = buffer.getLong(binsAt + i * Long.BYTES) >>> 48;
+                    if (bin >= QuantileSketch.BINS) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private int awaitCommit(ByteBuffer buffer, int at) {
+        int type = (int) INTS.getAcquire(buffer, at + Integer.BYTES);
+        long deadline = System.nanoTime() + COMMIT_TIMEOUT_NANOS;
+        while (type == 0 && System.nanoTime() - deadline < 0) {
+            Thread.onSpinWait();
+            type = (int) INTS.getAcquire(buffer, at + Integer.BYTES);
+        }
+        if (type == 0) {
+            log.warn("Record at {} was reserved but never written, skipping the rest of its segment", at);
+        }
+        return type;
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Mapped segment file. Space is reserved by moving the position; once the segment is sealed, every
+     * record below its end is either committed or about to be, and the only record which did not fit
+     * leaves a padding record behind.
+     */
+    private static final class Segment {
+        // far past any capacity, so reservations after sealing fail without overflowing
+        static final long SEALED = Long.MAX_VALUE / 2;
+
+        final Path path;
+        final long sequence;
+        final MappedByteBuffer buffer;
+        final AtomicLong position;
+        final boolean recovered;
+        // offset the records end before, set when sealed and guarded by the journal
+        int end;
+
+        private Segment(Path path, long sequence, MappedByteBuffer buffer, long position, boolean recovered) {
+            this.path = path;
+            this.sequence = sequence;
+            this.buffer = buffer;
+            this.position = new AtomicLong(position);
+            this.recovered = recovered;
+            this.end = buffer.capacity();
+        }
+
+        static Segment create(Path path, long sequence, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, CREATE_NEW, READ, WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN).putLong(0, MAGIC);
+                return new Segment(path, sequence, buffer, FILE_HEADER_BYTES, false);
+            }
+        }
+
+        /**
+         * Maps a segment left by a previous run, its records end at the first one not committed.
+         */
+        static Segment open(Path path, long sequence) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, READ, WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                return new Segment(path, sequence, buffer, SEALED, true);
+            }
+        }
+
+        /**
+         * @return offset of the reserved record, -1 if the segment is sealed or full
+         */
+        int reserve(int length) {
+            long at = position.getAndAdd(length);
+            if (at <= buffer.capacity() - length) {
+                return (int) at;
+            }
+            if (at < buffer.capacity()) {
+                // first record which does not fit, later reservations start past the end
+                commit((int) at, buffer.capacity() - (int) at, PADDING);
+            }
+            return -1;
+        }
+
+        void commit(int at, int length, int type) {
+            buffer.putInt(at, length);
+            INTS.setRelease(buffer, at + Integer.BYTES, type);
+        }
+
+        boolean isEmpty() {
+            return position.get() == FILE_HEADER_BYTES;
+        }
+
+        void seal() {
+            end = (int) Math.min(position.getAndSet(SEALED), buffer.capacity());
+        }
+    }
+
+    /**
+     * Accumulators of a writer thread, one set per generation.
+     */
+    private static final class Pending {
+        final Thread owner;
+        final Accumulators[] generations = {new Accumulators(), new Accumulators()};
+        // set while the owner adds to one of the generations
+        volatile boolean busy;
+
+        Pending(Thread owner) {
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Sums of a few buckets, written by their thread only and drained by flush
+     * once the thread moved on to the other generation.
+     */
+    private static final class Accumulators {
+        // buckets a thread accumulates between two flushes, the current second and a late one or two
+        static final int SLOTS = 4;
+        static final long EMPTY = Long.MIN_VALUE;
+
+        final long[] keys = new long[SLOTS];
+        final Statistics[] statistics = new Statistics[SLOTS];
+        // allocated on the first transaction of a slot, kept for the next buckets
+        final long[][] bins = new long[SLOTS][];
+
+        Accumulators() {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                statistics[slot] = Statistics.empty();
+                keys[slot] = EMPTY;
+            }
+        }
+
+        /**
+         * @return false if every slot holds another bucket
+         */
+        boolean add(long key, double amount, long units) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                if (keys[slot] == EMPTY) {
+                    keys[slot] = key;
+                    if (bins[slot] == null) {
+                        bins[slot] = new long[QuantileSketch.BINS];
+                    }
+                } else if (keys[slot] != key) {
+                    continue;
+                }
+                statistics[slot].add(amount, units);
+                bins[slot][QuantileSketch.binOf(amount)]++;
+                return true;
+            }
+            return false;
+        }
+
+        void reset(int slot) {
+            keys[slot] = EMPTY;
+            statistics[slot].clear();
+            if (bins[slot] != null) {
+                Arrays.fill(bins[slot], 0);
+            }
+        }
+    }
+
+    private static final class Delta {
+        final Statistics statistics = Statistics.empty();
+        final long[] bins = new long[QuantileSketch.BINS];
+
+        void add(double amount, long units) {
+            statistics.add(amount, units);
+            bins[QuantileSketch.binOf(amount)]++;
+        }
+
+        int binCount() {
+            int binCount = 0;
+            for (long bin : bins) {
+                if (bin != 0) {
+                    binCount++;
+                }
+            }
+            return binCount;
+        }
+
+        Statistics toStatistics() {
+            statistics.setAvg(statistics.getSum() / statistics.getCount());
+            return statistics;
+        }
+    }
+}
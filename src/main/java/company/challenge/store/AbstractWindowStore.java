@@ -0,0 +1,323 @@
+package company.challenge.store;
+
+import company.challenge.TimeUtil;
+import company.challenge.domain.Statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ring layout and read side shared by the window stores.
+ * Bucket for a period lives in the slot (period % capacity) and is tagged with the period start,
+ * so a slot still holding an older period is replaced lazily by the next write into it.
+ * Memory depends only on (window + future) / bucket, e.g. an hour of 1s buckets takes 3601 slots.
+ * The future allowance keeps buckets of clocks running ahead apart from the ones in the window.
+ * <p>
+ * Readers keep a {@link SegmentTree} over the slots up to date incrementally: writers flag their slot
+ * in a dirty bitmap, and slots falling out of the window are cleared as the window start moves,
+ * so an aggregate only refolds the buckets that changed since the previous one, histograms included.
+ * <p>
+ * Histograms dominate the memory: each bucket takes {@link QuantileSketch#BINS} longs, ~10 KB, and the index
+ * about twice as much again, so stores without percentiles keep none and take a few hundred bytes per bucket.
+ */
+abstract class AbstractWindowStore implements WindowStore {
+
+    static final long EMPTY = Long.MIN_VALUE;
+
+    private final long windowMillis;
+
+    private final long bucketMillis;
+
+    private final long futureMillis;
+
+    private final int capacity;
+
+    // QuantileSketch.BINS with percentiles, 0 without
+    private final int binCount;
+
+    // one bit per slot written since the index last folded it in
+    private final AtomicLongArray dirty;
+
+    private volatile boolean modified;
+
+    private final LongAdder overwrittenBuckets = new LongAdder();
+
+    private final ReentrantLock indexLock = new ReentrantLock();
+
+    // guarded by indexLock
+    final SegmentTree index;
+
+    // guarded by indexLock
+    private final SegmentTree.Range range = new SegmentTree.Range();
+
+    // guarded by indexLock
+    private final long[] mergedBins;
+
+    // histogram of the slot being refreshed, guarded by indexLock
+    final long[] slotBins;
+
+    private volatile long version;
+
+    // window start the index was last refreshed for, guarded by indexLock
+    private long indexedWindowStart = Long.MIN_VALUE;
+
+    AbstractWindowStore(long windowMillis, long bucketMillis, long futureMillis, boolean percentiles) {
+        if (windowMillis <= 0 || bucketMillis <= 0 || futureMillis < 0) {
+            throw new IllegalArgumentException("Window and bucket length must be positive, future not negative");
+        }
+        long periods = -Math.floorDiv(-(windowMillis + futureMillis), bucketMillis);
+        if (periods >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Window of " + windowMillis + " ms plus " + futureMillis
+                + " ms ahead needs too many " + bucketMillis + " ms buckets");
+        }
+        this.windowMillis = windowMillis;
+        this.bucketMillis = bucketMillis;
+        this.futureMillis = futureMillis;
+        // window start is inclusive, so the window touches one more distinct period than it spans
+        this.capacity = (int) periods + 1;
+        this.binCount = percentiles ? QuantileSketch.BINS : 0;
+        this.dirty = new AtomicLongArray((capacity + 63) / 64);
+        this.index = new SegmentTree(capacity, binCount);
+        this.mergedBins = new long[binCount];
+        this.slotBins = new long[binCount];
+    }
+
+    /**
+     * Folds the slot into the index with its histogram read into {@link #slotBins},
+     * or clears it there if the slot is empty or older than the window start.
+     * Called under the index lock.
+     */
+    abstract void refreshSlot(int slot, long windowStartTimestamp);
+
+    /**
+     * Empties every slot.
+     */
+    abstract void resetSlots();
+
+    /**
+     * Passes the bucket of the slot to the consumer if it is not empty and started in [fromTimestamp, toTimestamp),
+     * with its histogram in the given bins.
+     */
+    abstract void visitSlot(int slot, long fromTimestamp, long toTimestamp, long[] bins, BucketConsumer consumer);
+
+    @Override
+    public boolean add(long timestamp, double amount) {
+        return add(timestamp, amount, 0);
+    }
+
+    @Override
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    @Override
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    @Override
+    public long getFutureMillis() {
+        return futureMillis;
+    }
+
+    @Override
+    public long alignToBucket(long timestamp) {
+        return TimeUtil.alignMillis(timestamp, bucketMillis);
+    }
+
+    @Override
+    public boolean hasPercentiles() {
+        return binCount > 0;
+    }
+
+    @Override
+    public long getOverwrittenBuckets() {
+        return overwrittenBuckets.sum();
+    }
+
+    @Override
+    public boolean isModified() {
+        return modified;
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public Statistics aggregate(long windowStartTimestamp) {
+        return aggregateWindow(windowStartTimestamp).getStatistics();
+    }
+
+    @Override
+    public WindowAggregate aggregateWindow(long windowStartTimestamp) {
+        return aggregateWindows(windowStartTimestamp, windowStartTimestamp)[0];
+    }
+
+    @Override
+    public WindowAggregate[] aggregateWindows(long horizonTimestamp, long... windowStartTimestamps) {
+        WindowAggregate[] result = new WindowAggregate[windowStartTimestamps.length];
+        indexLock.lock();
+        try {
+            refreshIndex(horizonTimestamp);
+            for (int i = 0; i < windowStartTimestamps.length; i++) {
+                long windowStart = Math.max(windowStartTimestamps[i], horizonTimestamp);
+                index.query(windowStart, range, mergedBins);
+                Statistics statistics = new Statistics();
+                Statistics merged = range.statistics;
+                if (merged.getCount() > 0) {
+                    statistics = toStatistics(merged.getSum(), merged.getUnits(), merged.getCount(), merged.getMax(),
+                        merged.getMin());
+                    setQuantiles(statistics, mergedBins);
+                }
+                result[i] = new WindowAggregate(statistics, range.oldest, version);
+            }
+            return result;
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    @Override
+    public void forEachBucket(long windowStartTimestamp, BucketConsumer consumer) {
+        forEachBucket(windowStartTimestamp, Long.MAX_VALUE, consumer);
+    }
+
+    @Override
+    public void forEachBucket(long fromTimestamp, long toTimestamp, BucketConsumer consumer) {
+        long[] bins = new long[binCount];
+        long span = toTimestamp - fromTimestamp;
+        // negative when the range overflows, which is never short
+        if (span > 0 && span / bucketMillis < capacity - 1) {
+            for (long key = alignToBucket(fromTimestamp); key < toTimestamp; key += bucketMillis) {
+                visitSlot(indexOf(key), fromTimestamp, toTimestamp, bins, consumer);
+            }
+            return;
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            visitSlot(slot, fromTimestamp, toTimestamp, bins, consumer);
+        }
+    }
+
+    @Override
+    public void clear() {
+        resetSlots();
+        indexLock.lock();
+        try {
+            index.clear();
+            indexedWindowStart = Long.MIN_VALUE;
+            for (int i = 0; i < dirty.length(); i++) {
+                dirty.set(i, 0);
+            }
+            modified = true;
+            version++;
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int binCount() {
+        return binCount;
+    }
+
+    int indexOf(long key) {
+        long period = Math.floorDiv(key, bucketMillis);
+        return (int) Math.floorMod(period, (long) capacity);
+    }
+
+    void countOverwritten() {
+        overwrittenBuckets.increment();
+    }
+
+    void markDirty(int slot) {
+        int word = slot >>> 6;
+        long mask = 1L << slot;
+        if ((dirty.get(word) & mask) == 0) {
+            dirty.getAndAccumulate(word, mask, (bits, bit) -> bits | bit);
+        }
+        if (!modified) {
+            modified = true;
+        }
+    }
+
+    // guarded by indexLock
+    private void refreshIndex(long windowStartTimestamp) {
+        // cleared before the bitmap is drained, so a concurrent write flags the next aggregate again
+        if (modified) {
+            modified = false;
+            version++;
+        }
+        if (windowStartTimestamp < indexedWindowStart) {
+            // window moved backwards, slots cleared as expired may count again
+            for (int slot = 0; slot < capacity; slot++) {
+                refreshSlot(slot, windowStartTimestamp);
+            }
+        } else {
+            expireSlots(windowStartTimestamp);
+        }
+        indexedWindowStart = windowStartTimestamp;
+
+        for (int word = 0; word < dirty.length(); word++) {
+            if (dirty.get(word) == 0) {
+                continue;
+            }
+            long bits = dirty.getAndSet(word, 0);
+            while (bits != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                refreshSlot(slot, windowStartTimestamp);
+            }
+        }
+    }
+
+    // clears slots of the periods which left the window since the previous refresh
+    private void expireSlots(long windowStartTimestamp) {
+        if (indexedWindowStart == Long.MIN_VALUE
+            || windowStartTimestamp - indexedWindowStart >= capacity * bucketMillis) {
+            for (int slot = 0; slot < capacity; slot++) {
+                expireSlot(slot, windowStartTimestamp);
+            }
+            return;
+        }
+        // periods older than the previous window start were cleared already
+        long firstKey = -Math.floorDiv(-indexedWindowStart, bucketMillis) * bucketMillis;
+        for (long key = firstKey; key < windowStartTimestamp; key += bucketMillis) {
+            expireSlot(indexOf(key), windowStartTimestamp);
+        }
+    }
+
+    private void expireSlot(int slot, long windowStartTimestamp) {
+        long key = index.key(slot);
+        if (key != EMPTY && key < windowStartTimestamp) {
+            index.clear(slot);
+        }
+    }
+
+    // leaves them 0 for empty bins, as without percentiles
+    static void setQuantiles(Statistics statistics, long[] bins) {
+        long total = 0;
+        for (long count : bins) {
+            total += count;
+        }
+        statistics.setP50(QuantileSketch.quantile(bins, total, 0.50, statistics.getMin(), statistics.getMax()));
+        statistics.setP95(QuantileSketch.quantile(bins, total, 0.95, statistics.getMin(), statistics.getMax()));
+        statistics.setP99(QuantileSketch.quantile(bins, total, 0.99, statistics.getMin(), statistics.getMax()));
+    }
+
+    static Statistics toStatistics(double sum, long units, long count, double max, double min) {
+        Statistics result = new Statistics();
+        result.setSum(sum);
+        result.setUnits(units);
+        result.setCount(count);
+        result.setMax(max);
+        result.setMin(min);
+        result.setAvg(sum / count);
+        return result;
+    }
+}
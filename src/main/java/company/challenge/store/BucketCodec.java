@@ -0,0 +1,111 @@
+package company.challenge.store;
+
+import company.challenge.domain.Statistics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compact binary form of the buckets of a store, exchanged between nodes of a cluster.
+ * <p>
+ * A magic int is followed by one record per bucket: key, count, sum, units, min, max, the number of non-empty
+ * bins and (bin, count) for each of them, big-endian. A full 60s window of 1s buckets with a few dozen
+ * distinct bins each is a few KB, independent of the number of transactions.
+ */
+public final class BucketCodec {
+
+    // STB3, nodes exchanging buckets run the same version
+    private static final int MAGIC = 0x53544233;
+
+    private BucketCodec() {
+    }
+
+    /**
+     * @return buckets started at or after the window start
+     */
+    public static byte[] encode(WindowStore store, long windowStartTimestamp) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            store.forEachBucket(windowStartTimestamp, (key, statistics, bins) -> {
+                try {
+                    writeBucket(out, key, statistics, bins);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Merges every encoded bucket into the store.
+     *
+     * @return number of buckets read
+     * @throws IllegalArgumentException if the data is not a complete encoding
+     */
+    public static int decode(byte[] data, WindowStore into) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long[] bins = new long[QuantileSketch.BINS];
+        int buckets = 0;
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not an encoding of buckets");
+            }
+            while (buffer.hasRemaining()) {
+                long key = buffer.getLong();
+                Statistics statistics = new Statistics();
+                statistics.setCount(buffer.getLong());
+                statistics.setSum(buffer.getDouble());
+                statistics.setUnits(buffer.getLong());
+                statistics.setMin(buffer.getDouble());
+                statistics.setMax(buffer.getDouble());
+                int binCount = buffer.getShort();
+                for (int i = 0; i < binCount; i++) {
+                    int bin = buffer.getShort();
+                    if (bin < 0 || bin >= bins.length) {
+                        throw new IllegalArgumentException("Bin " + bin + " out of range");
+                    }
+                    bins[bin] += buffer.getLong();
+                }
+                into.merge(key, statistics, bins);
+                Arrays.fill(bins, 0);
+                buckets++;
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated encoding of buckets", e);
+        }
+        return buckets;
+    }
+
+    private static void writeBucket(DataOutputStream out, long key, Statistics statistics, long[] bins)
+        throws IOException {
+        out.writeLong(key);
+        out.writeLong(statistics.getCount());
+        out.writeDouble(statistics.getSum());
+        out.writeLong(statistics.getUnits());
+        out.writeDouble(statistics.getMin());
+        out.writeDouble(statistics.getMax());
+        int binCount = 0;
+        for (long count : bins) {
+            if (count != 0) {
+                binCount++;
+            }
+        }
+        out.writeShort(binCount);
+        for (int bin = 0; bin < bins.length; bin++) {
+            if (bins[bin] != 0) {
+                out.writeShort(bin);
+                out.writeLong(bins[bin]);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package company.challenge.store;
+
+import company.challenge.domain.Statistics;
+
+@FunctionalInterface
+public interface BucketConsumer {
+
+    /**
+     * @param bins amounts counted per {@link QuantileSketch#binOf(double)}, only valid during the call
+     */
+    void accept(long bucketKey, Statistics statistics, long[] bins);
+}
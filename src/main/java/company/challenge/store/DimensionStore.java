@@ -0,0 +1,339 @@
+package company.challenge.store;
+
+import company.challenge.TimeUtil;
+import company.challenge.domain.Statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Windowed statistics per dimension key (tenant, merchant...).
+ * <p>
+ * Every key gets a small ring of buckets held in primitive arrays, allocated on its first transaction,
+ * so a key costs about 48 bytes per bucket plus the map entry: 100k keys with a 60s window
+ * in 5s buckets take ~65 MB. Keys without transactions in the window are dropped by {@link #sweep},
+ * and no more than maxKeys are tracked at once.
+ * <p>
+ * Every bucket also keeps its busiest keys, up to four times the top size, updated by {@link #add} once a key's count
+ * in the bucket passes the least busy of them. {@link #getTop} ranks only the keys kept by the buckets in the window,
+ * a few hundred at most whatever the number of keys, so a key busy over the window but never among the busiest
+ * of any of its buckets may be missed.
+ * <p>
+ * Buckets do not keep quantile sketches, per key statistics carry no percentiles.
+ */
+public class DimensionStore {
+
+    private static final Comparator<KeyedStatistics> BY_COUNT =
+        Comparator.comparingLong(keyed -> keyed.getStatistics().getCount());
+
+    private final long bucketMillis;
+
+    private final int capacity;
+
+    private final int maxKeys;
+
+    private final int topSize;
+
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+    private final LongAdder rejectedKeys = new LongAdder();
+
+    // busiest keys per bucket slot, empty without a top
+    private final Leaders[] leaders;
+
+    public DimensionStore(long windowMillis, long bucketMillis, int maxKeys, int topSize) {
+        if (windowMillis <= 0 || bucketMillis <= 0 || maxKeys <= 0 || topSize < 0) {
+            throw new IllegalArgumentException("Window, bucket length and key limit must be positive");
+        }
+        this.bucketMillis = bucketMillis;
+        // window start is inclusive, so the window touches one more distinct period than it spans
+        this.capacity = Math.toIntExact(-Math.floorDiv(-windowMillis, bucketMillis) + 1);
+        this.maxKeys = maxKeys;
+        this.topSize = topSize;
+        this.leaders = new Leaders[topSize == 0 ? 0 : capacity];
+        for (int slot = 0; slot < leaders.length; slot++) {
+            leaders[slot] = new Leaders(topSize * 4);
+        }
+    }
+
+    public boolean add(String key, long timestamp, double amount) {
+        return add(key, timestamp, amount, 0);
+    }
+
+    /**
+     * @param units amount in minor units, added to the exact sum of the bucket
+     * @return false if the key limit is reached or the bucket is already reused by a newer period
+     */
+    public boolean add(String key, long timestamp, double amount, long units) {
+        long bucketKey = TimeUtil.alignMillis(timestamp, bucketMillis);
+        while (true) {
+            Series current = series.get(key);
+            if (current == null) {
+                if (series.size() >= maxKeys) {
+                    rejectedKeys.increment();
+                    return false;
+                }
+                current = series.computeIfAbsent(key, k -> new Series(capacity));
+            }
+            int slot = slotOf(bucketKey);
+            long count = current.add(bucketKey, slot, amount, units);
+            if (count > 0) {
+                if (leaders.length > 0) {
+                    leaders[slot].offer(bucketKey, slot, key, current, count);
+                }
+                return true;
+            }
+            if (count == Series.STALE) {
+                return false;
+            }
+            // dropped by a concurrent sweep, recreate it
+            series.remove(key, current);
+        }
+    }
+
+    /**
+     * @return statistics of the key since the window start, empty if the key is unknown
+     */
+    public Statistics get(String key, long windowStartTimestamp) {
+        Series current = series.get(key);
+        return current == null ? new Statistics() : current.aggregate(windowStartTimestamp);
+    }
+
+    /**
+     * Ranks the keys kept by the buckets in the window, never scanning all keys.
+     *
+     * @return keys with the highest count in the window, at most topSize
+     */
+    public List<KeyedStatistics> getTop(long windowStartTimestamp) {
+        if (leaders.length == 0) {
+            return Collections.emptyList();
+        }
+        Set<String> candidates = new HashSet<>();
+        for (Leaders bucket : leaders) {
+            bucket.collect(windowStartTimestamp, candidates);
+        }
+        PriorityQueue<KeyedStatistics> ranking = new PriorityQueue<>(BY_COUNT);
+        for (String key : candidates) {
+            Series current = series.get(key);
+            if (current == null) {
+                continue;
+            }
+            Statistics statistics = current.aggregate(windowStartTimestamp);
+            if (statistics.getCount() == 0) {
+                continue;
+            }
+            if (ranking.size() < topSize) {
+                ranking.add(new KeyedStatistics(key, statistics));
+            } else if (ranking.peek().getStatistics().getCount() < statistics.getCount()) {
+                ranking.poll();
+                ranking.add(new KeyedStatistics(key, statistics));
+            }
+        }
+        List<KeyedStatistics> ranked = new ArrayList<>(ranking);
+        ranked.sort(BY_COUNT.reversed());
+        return Collections.unmodifiableList(ranked);
+    }
+
+    public int size() {
+        return series.size();
+    }
+
+    /**
+     * @return transactions not tracked because the key limit was reached
+     */
+    public long getRejectedKeys() {
+        return rejectedKeys.sum();
+    }
+
+    /**
+     * Drops keys without transactions since the horizon.
+     *
+     * @return number of dropped keys
+     */
+    public int sweep(long horizonTimestamp) {
+        int dropped = 0;
+        for (Map.Entry<String, Series> entry : series.entrySet()) {
+            Series current = entry.getValue();
+            if (current.removeIfIdle(horizonTimestamp)) {
+                series.remove(entry.getKey(), current);
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    public void clear() {
+        series.clear();
+        for (Leaders bucket : leaders) {
+            bucket.clear();
+        }
+    }
+
+    private int slotOf(long bucketKey) {
+        return (int) Math.floorMod(Math.floorDiv(bucketKey, bucketMillis), (long) capacity);
+    }
+
+    /**
+     * Ring of buckets of a single key, guarded by its monitor.
+     * Writers to one key are serialized, writers to different keys never contend.
+     */
+    private static final class Series {
+        static final long STALE = -1;
+        static final long REMOVED = -2;
+
+        final long[] keys;
+        final double[] sum;
+        final long[] units;
+        final long[] count;
+        final double[] min;
+        final double[] max;
+        long newest = Long.MIN_VALUE;
+        boolean removed;
+
+        Series(int capacity) {
+            keys = new long[capacity];
+            sum = new double[capacity];
+            units = new long[capacity];
+            count = new long[capacity];
+            min = new double[capacity];
+            max = new double[capacity];
+            Arrays.fill(keys, Long.MIN_VALUE);
+        }
+
+        /**
+         * @return count of the bucket with this transaction, or STALE or REMOVED
+         */
+        synchronized long add(long key, int slot, double amount, long units) {
+            if (removed) {
+                return REMOVED;
+            }
+            if (keys[slot] > key) {
+                return STALE;
+            }
+            if (keys[slot] < key) {
+                keys[slot] = key;
+                sum[slot] = 0;
+                this.units[slot] = 0;
+                count[slot] = 0;
+                min[slot] = Double.POSITIVE_INFINITY;
+                max[slot] = Double.NEGATIVE_INFINITY;
+            }
+            sum[slot] += amount;
+            this.units[slot] += units;
+            count[slot]++;
+            min[slot] = Math.min(min[slot], amount);
+            max[slot] = Math.max(max[slot], amount);
+            newest = Math.max(newest, key);
+            return count[slot];
+        }
+
+        synchronized long countOf(long key, int slot) {
+            return keys[slot] == key ? count[slot] : 0;
+        }
+
+        synchronized Statistics aggregate(long windowStartTimestamp) {
+            Statistics result = Statistics.empty();
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] >= windowStartTimestamp && count[slot] > 0) {
+                    result.merge(sum[slot], units[slot], count[slot], min[slot], max[slot]);
+                }
+            }
+            if (result.getCount() == 0) {
+                return new Statistics();
+            }
+            result.setAvg(result.getSum() / result.getCount());
+            return result;
+        }
+
+        synchronized boolean removeIfIdle(long horizonTimestamp) {
+            if (newest < horizonTimestamp) {
+                removed = true;
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * Busiest keys of the bucket in one slot, guarded by its monitor. Writers only take it while the bucket
+     * is not full yet or their key's count passed the least busy key kept.
+     */
+    private static final class Leaders {
+        final int limit;
+        final Map<String, Series> keys = new ConcurrentHashMap<>();
+        volatile long bucketKey = Long.MIN_VALUE;
+        // count of the least busy key kept once full, only grows within a bucket
+        volatile long minCount;
+
+        Leaders(int limit) {
+            this.limit = limit;
+        }
+
+        void offer(long key, int slot, String name, Series current, long count) {
+            if (key == bucketKey && (count <= minCount || keys.containsKey(name))) {
+                return;
+            }
+            synchronized (this) {
+                if (key < bucketKey) {
+                    return;
+                }
+                if (key > bucketKey) {
+                    keys.clear();
+                    minCount = 0;
+                    bucketKey = key;
+                }
+                if (keys.containsKey(name)) {
+                    return;
+                }
+                if (keys.size() == limit) {
+                    String least = null;
+                    long leastCount = Long.MAX_VALUE;
+                    for (Map.Entry<String, Series> entry : keys.entrySet()) {
+                        long entryCount = entry.getValue().countOf(key, slot);
+                        if (entryCount < leastCount) {
+                            least = entry.getKey();
+                            leastCount = entryCount;
+                        }
+                    }
+                    if (count <= leastCount) {
+                        minCount = leastCount;
+                        return;
+                    }
+                    keys.remove(least);
+                }
+                keys.put(name, current);
+                if (keys.size() == limit) {
+                    minCount = minCount(key, slot);
+                }
+            }
+        }
+
+        synchronized void collect(long windowStartTimestamp, Set<String> into) {
+            if (bucketKey >= windowStartTimestamp) {
+                into.addAll(keys.keySet());
+            }
+        }
+
+        synchronized void clear() {
+            keys.clear();
+            minCount = 0;
+            bucketKey = Long.MIN_VALUE;
+        }
+
+        private long minCount(long key, int slot) {
+            long least = Long.MAX_VALUE;
+            for (Series kept : keys.values()) {
+                least = Math.min(least, kept.countOf(key, slot));
+            }
+            return least;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package company.challenge.store;
+
+import company.challenge.domain.Statistics;
+import lombok.Value;
+
+@Value
+public class KeyedStatistics {
+    String key;
+    Statistics statistics;
+}
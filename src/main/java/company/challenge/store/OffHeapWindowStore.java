@@ -0,0 +1,331 @@
+package company.challenge.store;
+
+import company.challenge.domain.Statistics;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Window store keeping every bucket in a direct buffer, so writes allocate nothing on the heap
+ * and GC pauses do not grow with the write rate.
+ * <p>
+ * A slot is a row of longs: key, writers in flight, count, sum/min/max as double bits, the exact units and,
+ * with percentiles, the {@link QuantileSketch} bins, all updated with VarHandle atomics. Rolling a slot over to a newer period
+ * marks its key as rolling, waits for the writers in flight to leave and resets it in place.
+ * Writers to the same bucket contend on the CAS of its sum/min/max, unlike the striped cells of
+ * {@link SlidingWindowStore}.
+ */
+public class OffHeapWindowStore extends AbstractWindowStore {
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    // key of a slot being reset, never a bucket start in practice
+    private static final long ROLLING = Long.MIN_VALUE + 1;
+
+    private static final int KEY = 0;
+
+    private static final int WRITERS = 1;
+
+    private static final int COUNT = 2;
+
+    private static final int SUM = 3;
+
+    private static final int MIN = 4;
+
+    private static final int MAX = 5;
+
+    private static final int UNITS = 6;
+
+    private static final int BINS = 7;
+
+    private final int slotBytes;
+
+    private final ByteBuffer slots;
+
+    public OffHeapWindowStore(long windowMillis, long bucketMillis) {
+        this(windowMillis, bucketMillis, 0);
+    }
+
+    /**
+     * @param futureMillis how far ahead of the clock transactions may be stored, see {@link WindowStore#getFutureMillis()}
+     */
+    public OffHeapWindowStore(long windowMillis, long bucketMillis, long futureMillis) {
+        this(windowMillis, bucketMillis, futureMillis, true);
+    }
+
+    /**
+     * @param percentiles whether slots keep a histogram, see {@link WindowStore#hasPercentiles()}
+     */
+    public OffHeapWindowStore(long windowMillis, long bucketMillis, long futureMillis, boolean percentiles) {
+        super(windowMillis, bucketMillis, futureMillis, percentiles);
+        this.slotBytes = (BINS + binCount()) * Long.BYTES;
+        this.slots = ByteBuffer.allocateDirect(Math.multiplyExact(capacity(), slotBytes)).order(ByteOrder.nativeOrder());
+        if (slots.alignmentOffset(0, Long.BYTES) != 0) {
+            throw new IllegalStateException("Direct buffer is not aligned for atomic access");
+        }
+        clear();
+    }
+
+    @Override
+    public boolean add(long timestamp, double amount, long units) {
+        long key = alignToBucket(timestamp);
+        int slot = indexOf(key);
+        if (!enter(slot, key)) {
+            return false;
+        }
+        try {
+            accumulateMax(slot, amount);
+            accumulateMin(slot, amount);
+            addDouble(slot, SUM, amount);
+            if (units != 0) {
+                LONGS.getAndAdd(slots, offset(slot, UNITS), units);
+            }
+            if (binCount() > 0) {
+                LONGS.getAndAdd(slots, offset(slot, BINS + QuantileSketch.binOf(amount)), 1L);
+            }
+            LONGS.getAndAdd(slots, offset(slot, COUNT), 1L); // last, so readers seeing the count also see the rest
+        } finally {
+            LONGS.getAndAdd(slots, offset(slot, WRITERS), -1L);
+        }
+        markDirty(slot);
+        return true;
+    }
+
+    @Override
+    public boolean merge(long timestamp, Statistics statistics, long[] bins) {
+        long key = alignToBucket(timestamp);
+        int slot = indexOf(key);
+        if (!enter(slot, key)) {
+            return false;
+        }
+        try {
+            accumulateMax(slot, statistics.getMax());
+            accumulateMin(slot, statistics.getMin());
+            addDouble(slot, SUM, statistics.getSum());
+            if (statistics.getUnits() != 0) {
+                LONGS.getAndAdd(slots, offset(slot, UNITS), statistics.getUnits());
+            }
+            for (int bin = 0; bin < Math.min(bins.length, binCount()); bin++) {
+                if (bins[bin] != 0) {
+                    LONGS.getAndAdd(slots, offset(slot, BINS + bin), bins[bin]);
+                }
+            }
+            LONGS.getAndAdd(slots, offset(slot, COUNT), statistics.getCount());
+        } finally {
+            LONGS.getAndAdd(slots, offset(slot, WRITERS), -1L);
+        }
+        markDirty(slot);
+        return true;
+    }
+
+    @Override
+    public Statistics get(long timestamp) {
+        long key = alignToBucket(timestamp);
+        int slot = indexOf(key);
+        long count = getLong(slot, COUNT);
+        if (getLong(slot, KEY) != key || count == 0) {
+            return null;
+        }
+        Statistics statistics = toStatistics(getDouble(slot, SUM), getLong(slot, UNITS), count, getDouble(slot, MAX),
+            getDouble(slot, MIN));
+        long[] bins = new long[binCount()];
+        addBinsTo(slot, key, bins);
+        setQuantiles(statistics, bins);
+        return statistics;
+    }
+
+    @Override
+    public int evict(long windowStartTimestamp) {
+        return evict(windowStartTimestamp, null);
+    }
+
+    @Override
+    public int evict(long windowStartTimestamp, BucketConsumer consumer) {
+        int evicted = 0;
+        long[] bins = consumer != null ? new long[binCount()] : null;
+        for (int slot = 0; slot < capacity(); slot++) {
+            long key = getLong(slot, KEY);
+            if (key != EMPTY && key != ROLLING && key < windowStartTimestamp
+                && roll(slot, key, EMPTY, consumer, bins)) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int slot = 0; slot < capacity(); slot++) {
+            if (getLong(slot, COUNT) > 0) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    void resetSlots() {
+        for (int slot = 0; slot < capacity(); slot++) {
+            reset(slot);
+            LONGS.setVolatile(slots, offset(slot, WRITERS), 0L);
+            LONGS.setVolatile(slots, offset(slot, KEY), EMPTY);
+        }
+    }
+
+    @Override
+    void visitSlot(int slot, long fromTimestamp, long toTimestamp, long[] bins, BucketConsumer consumer) {
+        long key = getLong(slot, KEY);
+        long count = getLong(slot, COUNT);
+        if (key == EMPTY || key == ROLLING || count == 0 || key < fromTimestamp || key >= toTimestamp) {
+            return;
+        }
+        Statistics statistics = toStatistics(getDouble(slot, SUM), getLong(slot, UNITS), count, getDouble(slot, MAX),
+            getDouble(slot, MIN));
+        Arrays.fill(bins, 0);
+        addBinsTo(slot, key, bins);
+        // skip a slot rolled over while read
+        if (getLong(slot, KEY) == key) {
+            consumer.accept(key, statistics, bins);
+        }
+    }
+
+    @Override
+    void refreshSlot(int slot, long windowStartTimestamp) {
+        long key = getLong(slot, KEY);
+        // count is read first: every update it reflects has already been applied to the other fields
+        long count = getLong(slot, COUNT);
+        if (key == EMPTY || key == ROLLING || count == 0 || key < windowStartTimestamp) {
+            index.clear(slot);
+            return;
+        }
+        double sum = getDouble(slot, SUM);
+        long units = getLong(slot, UNITS);
+        double min = getDouble(slot, MIN);
+        double max = getDouble(slot, MAX);
+        Arrays.fill(slotBins, 0);
+        addBinsTo(slot, key, slotBins);
+        if (getLong(slot, KEY) != key) {
+            // rolled over while read, the writer rolling it flags the slot again
+            index.clear(slot);
+            return;
+        }
+        index.set(slot, key, sum, units, count, min, max, slotBins);
+    }
+
+    // adds the histogram of the slot if it holds a bucket started at or after the timestamp
+    private void addBinsTo(int slot, long windowStartTimestamp, long[] bins) {
+        long key = getLong(slot, KEY);
+        if (key == ROLLING || key < windowStartTimestamp) {
+            return;
+        }
+        for (int bin = 0; bin < bins.length; bin++) {
+            bins[bin] += getLong(slot, BINS + bin);
+        }
+    }
+
+    /**
+     * Registers a writer of the slot, rolling it over if it holds an older period.
+     *
+     * @return false if the slot is already taken by a newer period
+     */
+    private boolean enter(int slot, long key) {
+        while (true) {
+            long current = getLong(slot, KEY);
+            if (current == ROLLING) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (current > key) {
+                return false;
+            }
+            if (current < key) {
+                roll(slot, current, key, null, null);
+                continue;
+            }
+            LONGS.getAndAdd(slots, offset(slot, WRITERS), 1L);
+            // a roll started after the key was read waits for the writers registered before it
+            if (getLong(slot, KEY) == key) {
+                return true;
+            }
+            LONGS.getAndAdd(slots, offset(slot, WRITERS), -1L);
+        }
+    }
+
+    // passes the bucket rolled over to the consumer once its writers are done, when given
+    private boolean roll(int slot, long from, long to, BucketConsumer consumer, long[] bins) {
+        if (!LONGS.compareAndSet(slots, offset(slot, KEY), from, ROLLING)) {
+            return false;
+        }
+        while (getLong(slot, WRITERS) != 0) {
+            Thread.onSpinWait();
+        }
+        long count = getLong(slot, COUNT);
+        if (to != EMPTY && count > 0) {
+            countOverwritten();
+        }
+        if (consumer != null && count > 0) {
+            for (int bin = 0; bin < bins.length; bin++) {
+                bins[bin] = getLong(slot, BINS + bin);
+            }
+            consumer.accept(from, toStatistics(getDouble(slot, SUM), getLong(slot, UNITS), count,
+                getDouble(slot, MAX), getDouble(slot, MIN)), bins);
+        }
+        reset(slot);
+        LONGS.setVolatile(slots, offset(slot, KEY), to);
+        return true;
+    }
+
+    private void reset(int slot) {
+        LONGS.setVolatile(slots, offset(slot, COUNT), 0L);
+        LONGS.setVolatile(slots, offset(slot, SUM), Double.doubleToRawLongBits(0));
+        LONGS.setVolatile(slots, offset(slot, UNITS), 0L);
+        LONGS.setVolatile(slots, offset(slot, MIN), Double.doubleToRawLongBits(Double.POSITIVE_INFINITY));
+        LONGS.setVolatile(slots, offset(slot, MAX), Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY));
+        for (int bin = 0; bin < binCount(); bin++) {
+            LONGS.setVolatile(slots, offset(slot, BINS + bin), 0L);
+        }
+    }
+
+    private void addDouble(int slot, int field, double value) {
+        int offset = offset(slot, field);
+        long bits;
+        do {
+            bits = (long) LONGS.getVolatile(slots, offset);
+        } while (!LONGS.compareAndSet(slots, offset, bits,
+            Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + value)));
+    }
+
+    private void accumulateMin(int slot, double value) {
+        int offset = offset(slot, MIN);
+        long bits = (long) LONGS.getVolatile(slots, offset);
+        while (value < Double.longBitsToDouble(bits)
+            && !LONGS.compareAndSet(slots, offset, bits, Double.doubleToRawLongBits(value))) {
+            bits = (long) LONGS.getVolatile(slots, offset);
+        }
+    }
+
+    private void accumulateMax(int slot, double value) {
+        int offset = offset(slot, MAX);
+        long bits = (long) LONGS.getVolatile(slots, offset);
+        while (value > Double.longBitsToDouble(bits)
+            && !LONGS.compareAndSet(slots, offset, bits, Double.doubleToRawLongBits(value))) {
+            bits = (long) LONGS.getVolatile(slots, offset);
+        }
+    }
+
+    private long getLong(int slot, int field) {
+        return (long) LONGS.getVolatile(slots, offset(slot, field));
+    }
+
+    private double getDouble(int slot, int field) {
+        return Double.longBitsToDouble(getLong(slot, field));
+    }
+
+    private int offset(int slot, int field) {
+        return slot * slotBytes + field * Long.BYTES;
+    }
+}
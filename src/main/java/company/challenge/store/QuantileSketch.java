@@ -0,0 +1,91 @@
+package company.challenge.store;
+
+/**
+ * Log-scale histogram layout in the spirit of DDSketch: a positive bin i counts amounts in (gamma^(i-1), gamma^i],
+ * so any quantile read from the bins is within {@link #RELATIVE_ACCURACY} of the true amount.
+ * Negative amounts are counted in mirrored bins by their magnitude and zero in a bin of its own,
+ * all ordered by amount: negative bins, the zero bin, positive bins.
+ * <p>
+ * The layout is fixed, so bins of different buckets merge by plain addition and every bucket
+ * takes {@link #BINS} longs. Magnitudes below {@link #MIN_AMOUNT} fall into the bin closest to zero
+ * and magnitudes above {@link #MAX_AMOUNT} into the outermost one;
+ * quantiles are clamped into the exact min/max of the window, so edge bins stay accurate enough.
+ */
+public final class QuantileSketch {
+
+    public static final double RELATIVE_ACCURACY = 0.02;
+
+    static final double MIN_AMOUNT = 0.01;
+
+    static final double MAX_AMOUNT = 1e9;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+
+    private static final double INVERSE_LOG_GAMMA = 1 / Math.log(GAMMA);
+
+    private static final int OFFSET = (int) Math.ceil(Math.log(MIN_AMOUNT) * INVERSE_LOG_GAMMA);
+
+    // bins on either side of zero
+    private static final int SIDE_BINS = (int) Math.ceil(Math.log(MAX_AMOUNT) * INVERSE_LOG_GAMMA) - OFFSET + 1;
+
+    private static final int ZERO_BIN = SIDE_BINS;
+
+    public static final int BINS = 2 * SIDE_BINS + 1;
+
+    // midpoint of every bin, relative error to any amount in the bin is at most RELATIVE_ACCURACY
+    private static final double[] VALUES = new double[BINS];
+
+    static {
+        for (int bin = 0; bin < SIDE_BINS; bin++) {
+            double value = 2 * Math.pow(GAMMA, bin + OFFSET) / (GAMMA + 1);
+            VALUES[ZERO_BIN + 1 + bin] = value;
+            VALUES[ZERO_BIN - 1 - bin] = -value;
+        }
+    }
+
+    private QuantileSketch() {
+    }
+
+    public static int binOf(double amount) {
+        if (amount > 0) {
+            return ZERO_BIN + 1 + sideBinOf(amount);
+        }
+        if (amount < 0) {
+            return ZERO_BIN - 1 - sideBinOf(-amount);
+        }
+        return ZERO_BIN;
+    }
+
+    // bin of a positive magnitude counted from zero outwards
+    private static int sideBinOf(double magnitude) {
+        if (magnitude <= MIN_AMOUNT) {
+            return 0;
+        }
+        if (magnitude >= MAX_AMOUNT) {
+            return SIDE_BINS - 1;
+        }
+        int bin = (int) Math.ceil(Math.log(magnitude) * INVERSE_LOG_GAMMA) - OFFSET;
+        return Math.min(Math.max(bin, 0), SIDE_BINS - 1);
+    }
+
+    /**
+     * @param bins  merged bin counts
+     * @param total sum of all bins
+     * @param q     quantile in [0, 1]
+     * @return amount at the quantile clamped into [min, max], 0 for an empty histogram
+     */
+    static double quantile(long[] bins, long total, double q, double min, double max) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) (q * (total - 1));
+        long seen = 0;
+        for (int bin = 0; bin < bins.length; bin++) {
+            seen += bins[bin];
+            if (seen > rank) {
+                return Math.min(Math.max(VALUES[bin], min), max);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,149 @@
+package company.challenge.store;
+
+import company.challenge.domain.Statistics;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the history of a window store past its window in coarser tiers, e.g. per minute for a day
+ * and per hour for a month.
+ * <p>
+ * Buckets leaving the window are folded into every tier as {@link #evict} resets them, the same merge the stores
+ * apply to a batch, so each tier is a ring of its own with fixed memory and retention. A range is answered from
+ * the coarsest buckets inside it: whole hours from the hour tier, the minutes at its edges from the minute tier
+ * and what was not folded yet from the window store, so a day costs about 24 + 2 * 60 bucket merges.
+ * Before the window, ranges are as precise as the finest tier.
+ * <p>
+ * Tiers are kept in memory only, the journal restores the window alone. Ranges have percentiles only if the tiers
+ * keep them too, which takes ~10 KB per tier bucket.
+ */
+public class RollupStore {
+
+    private final WindowStore source;
+
+    // finest first, every tier with a longer bucket than the previous one
+    private final WindowStore[] tiers;
+
+    // a range never sees a fold half done, which would count the buckets being folded twice
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // buckets of the source started before were evicted into the tiers, guarded by lock
+    private long foldedUntil = Long.MIN_VALUE;
+
+    private final BucketConsumer folder = this::fold;
+
+    // ranges have percentiles only if every store they are answered from keeps them
+    private final boolean percentiles;
+
+    /**
+     * @param tiers stores bucketed coarser than the source, finest first
+     */
+    public RollupStore(WindowStore source, WindowStore... tiers) {
+        long bucketMillis = source.getBucketMillis();
+        for (WindowStore tier : tiers) {
+            if (tier.getBucketMillis() <= bucketMillis || tier.getBucketMillis() % bucketMillis != 0) {
+                throw new IllegalArgumentException("Tier buckets of " + tier.getBucketMillis()
+                    + " ms are not a multiple of the previous " + bucketMillis + " ms");
+            }
+            bucketMillis = tier.getBucketMillis();
+        }
+        boolean percentiles = source.hasPercentiles();
+        for (WindowStore tier : tiers) {
+            percentiles &= tier.hasPercentiles();
+        }
+        this.source = source;
+        this.tiers = tiers;
+        this.percentiles = percentiles;
+    }
+
+    /**
+     * Evicts the buckets of the source started before the given timestamp, folding each into every tier
+     * as it is reset. A bucket a late write created again after its eviction is folded by the next call.
+     * Called by the eviction run, one run at a time.
+     *
+     * @return number of evicted buckets
+     */
+    public int evict(long untilTimestamp) {
+        lock.lock();
+        try {
+            int evicted = tiers.length > 0 ? source.evict(untilTimestamp, folder) : source.evict(untilTimestamp);
+            foldedUntil = Math.max(foldedUntil, untilTimestamp);
+            return evicted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return statistics of the buckets started in [fromTimestamp, toTimestamp)
+     */
+    public Statistics aggregate(long fromTimestamp, long toTimestamp) {
+        Merger merger = new Merger(percentiles);
+        lock.lock();
+        try {
+            if (tiers.length > 0 && fromTimestamp < foldedUntil) {
+                collect(tiers.length - 1, fromTimestamp, Math.min(toTimestamp, foldedUntil), merger);
+            }
+            source.forEachBucket(Math.max(fromTimestamp, foldedUntil), toTimestamp, merger);
+        } finally {
+            lock.unlock();
+        }
+        return merger.toStatistics();
+    }
+
+    // takes the whole buckets of the tier inside the range and the edges from the finer tiers
+    private void collect(int tier, long fromTimestamp, long toTimestamp, Merger merger) {
+        if (fromTimestamp >= toTimestamp) {
+            return;
+        }
+        WindowStore store = tiers[tier];
+        if (tier == 0) {
+            store.forEachBucket(fromTimestamp, toTimestamp, merger);
+            return;
+        }
+        long first = store.alignToBucket(fromTimestamp);
+        if (first < fromTimestamp) {
+            first += store.getBucketMillis();
+        }
+        long last = store.alignToBucket(toTimestamp);
+        if (first >= last) {
+            collect(tier - 1, fromTimestamp, toTimestamp, merger);
+            return;
+        }
+        collect(tier - 1, fromTimestamp, first, merger);
+        store.forEachBucket(first, last, merger);
+        collect(tier - 1, last, toTimestamp, merger);
+    }
+
+    private void fold(long bucketKey, Statistics statistics, long[] bins) {
+        for (WindowStore tier : tiers) {
+            tier.merge(bucketKey, statistics, bins);
+        }
+    }
+
+    private static final class Merger implements BucketConsumer {
+        final long[] bins;
+        final Statistics merged = Statistics.empty();
+
+        Merger(boolean percentiles) {
+            this.bins = new long[percentiles ? QuantileSketch.BINS : 0];
+        }
+
+        @Override
+        public void accept(long bucketKey, Statistics statistics, long[] counts) {
+            merged.merge(statistics);
+            for (int bin = 0; bin < Math.min(counts.length, bins.length); bin++) {
+                bins[bin] += counts[bin];
+            }
+        }
+
+        Statistics toStatistics() {
+            if (merged.getCount() == 0) {
+                return new Statistics();
+            }
+            merged.setAvg(merged.getSum() / merged.getCount());
+            AbstractWindowStore.setQuantiles(merged, bins);
+            return merged;
+        }
+    }
+}
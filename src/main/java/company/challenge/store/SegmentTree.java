@@ -0,0 +1,205 @@
+package company.challenge.store;
+
+import company.challenge.domain.Statistics;
+
+import java.util.Arrays;
+
+/**
+ * Segment tree over bucket slots holding sum/units/count/min/max, the merged histogram bins and the oldest and
+ * newest key of non-empty slots, so a changed slot is folded into the aggregate in O(log n) instead of rescanning
+ * every bucket. Bins take a row of longs per node, about twice the histograms of the slots themselves,
+ * allocated by the first {@link #set} so stores which are never aggregated do not pay for them.
+ * <p>
+ * Keys grow along the ring, so aggregating the slots with key at or after a window start
+ * only descends into the O(log n) nodes straddling that start and the ring wrap-around.
+ * <p>
+ * Not thread-safe, guarded by the owning store.
+ */
+class SegmentTree {
+
+    private final int leaves;
+
+    private final long[] keys;
+
+    // sum/units/count/min/max per node, exact sums add up with wrapping, see WindowStore#add(long, double, long)
+    private final Statistics[] nodes;
+
+    private final long[] oldest;
+
+    private final long[] newest;
+
+    private final int binCount;
+
+    // row of binCount counts per node, leaves hold the bins of their slot as of the last set, null until then
+    private long[] bins;
+
+    SegmentTree(int slots, int binCount) {
+        int size = 1;
+        while (size < slots) {
+            size <<= 1;
+        }
+        this.leaves = size;
+        this.keys = new long[slots];
+        this.nodes = new Statistics[2 * size];
+        for (int node = 0; node < nodes.length; node++) {
+            nodes[node] = new Statistics();
+        }
+        this.oldest = new long[2 * size];
+        this.newest = new long[2 * size];
+        this.binCount = binCount;
+        clear();
+    }
+
+    /**
+     * @param slotBins histogram of the slot, copied
+     */
+    void set(int slot, long key, double sum, long units, long count, double min, double max, long[] slotBins) {
+        int node = leaves + slot;
+        if (bins == null) {
+            bins = new long[Math.multiplyExact(2 * leaves, binCount)];
+        }
+        int row = node * binCount;
+        for (int bin = 0; bin < binCount; bin++) {
+            long delta = slotBins[bin] - bins[row + bin];
+            if (delta != 0) {
+                addBins(node, bin, delta);
+            }
+        }
+        keys[slot] = key;
+        nodes[node].clear();
+        nodes[node].merge(sum, units, count, min, max);
+        this.oldest[node] = key;
+        this.newest[node] = key;
+        pullUp(node);
+    }
+
+    void clear(int slot) {
+        int node = leaves + slot;
+        int row = node * binCount;
+        for (int bin = 0; bins != null && bin < binCount; bin++) {
+            long count = bins[row + bin];
+            if (count != 0) {
+                addBins(node, bin, -count);
+            }
+        }
+        keys[slot] = Long.MIN_VALUE;
+        nodes[node].clear();
+        oldest[node] = Long.MAX_VALUE;
+        newest[node] = Long.MIN_VALUE;
+        pullUp(node);
+    }
+
+    void clear() {
+        Arrays.fill(keys, Long.MIN_VALUE);
+        for (Statistics node : nodes) {
+            node.clear();
+        }
+        Arrays.fill(oldest, Long.MAX_VALUE);
+        Arrays.fill(newest, Long.MIN_VALUE);
+        if (bins != null) {
+            Arrays.fill(bins, 0);
+        }
+    }
+
+    /**
+     * @return key held by the slot, Long.MIN_VALUE if it is empty
+     */
+    long key(int slot) {
+        return keys[slot];
+    }
+
+    double sum() {
+        return nodes[1].getSum();
+    }
+
+    long count() {
+        return nodes[1].getCount();
+    }
+
+    double min() {
+        return nodes[1].getMin();
+    }
+
+    double max() {
+        return nodes[1].getMax();
+    }
+
+    /**
+     * @return oldest key among non-empty slots, Long.MAX_VALUE if all are empty
+     */
+    long oldest() {
+        return oldest[1];
+    }
+
+    /**
+     * Folds every non-empty slot with key >= fromKey into the range.
+     */
+    void query(long fromKey, Range range) {
+        query(fromKey, range, null);
+    }
+
+    /**
+     * Folds every non-empty slot with key >= fromKey into the range and adds their bins to the given ones.
+     *
+     * @param rangeBins bins to add to, cleared first, or null to skip the histogram
+     */
+    void query(long fromKey, Range range, long[] rangeBins) {
+        range.reset();
+        if (rangeBins != null) {
+            Arrays.fill(rangeBins, 0);
+        }
+        query(1, fromKey, range, rangeBins);
+    }
+
+    private void query(int node, long fromKey, Range range, long[] rangeBins) {
+        if (newest[node] < fromKey) {
+            return;
+        }
+        if (oldest[node] >= fromKey) {
+            range.statistics.merge(nodes[node]);
+            range.oldest = Math.min(range.oldest, oldest[node]);
+            if (rangeBins != null && bins != null && nodes[node].getCount() > 0) {
+                int row = node * binCount;
+                for (int bin = 0; bin < binCount; bin++) {
+                    rangeBins[bin] += bins[row + bin];
+                }
+            }
+            return;
+        }
+        // a leaf is either taken or skipped above, so the node has children
+        query(node << 1, fromKey, range, rangeBins);
+        query((node << 1) + 1, fromKey, range, rangeBins);
+    }
+
+    // adds the delta to the bin of the node and of every ancestor
+    private void addBins(int node, int bin, long delta) {
+        for (int current = node; current > 0; current >>>= 1) {
+            bins[current * binCount + bin] += delta;
+        }
+    }
+
+    private void pullUp(int node) {
+        for (int parent = node >>> 1; parent > 0; parent >>>= 1) {
+            int left = parent << 1;
+            int right = left + 1;
+            nodes[parent].clear();
+            nodes[parent].merge(nodes[left]);
+            nodes[parent].merge(nodes[right]);
+            oldest[parent] = Math.min(oldest[left], oldest[right]);
+            newest[parent] = Math.max(newest[left], newest[right]);
+        }
+    }
+
+    /**
+     * Result of a range query, reused by the caller.
+     */
+    static final class Range {
+        final Statistics statistics = Statistics.empty();
+        long oldest;
+
+        void reset() {
+            statistics.clear();
+            oldest = Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package company.challenge.store;
+
+import company.challenge.domain.Statistics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size ring of heap buckets covering {@code bucketMillis} each, one second by default.
+ * <p>
+ * Writers never lock: each bucket accumulates sum/units/count/min/max in striped cells
+ * and amounts in a fixed {@link QuantileSketch} histogram, if it keeps percentiles,
+ * which are merged only when statistics are read.
+ * A slot rolls over to a newer period by swapping in a fresh bucket.
+ */
+public class SlidingWindowStore extends AbstractWindowStore {
+
+    private static final Bucket EMPTY_BUCKET = new Bucket(EMPTY, 0);
+
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    public SlidingWindowStore(int windowSize) {
+        this(windowSize * 1000L, 1000L);
+    }
+
+    public SlidingWindowStore(long windowMillis, long bucketMillis) {
+        this(windowMillis, bucketMillis, 0);
+    }
+
+    /**
+     * @param futureMillis how far ahead of the clock transactions may be stored, see {@link WindowStore#getFutureMillis()}
+     */
+    public SlidingWindowStore(long windowMillis, long bucketMillis, long futureMillis) {
+        this(windowMillis, bucketMillis, futureMillis, true);
+    }
+
+    /**
+     * @param percentiles whether buckets keep a histogram, see {@link WindowStore#hasPercentiles()}
+     */
+    public SlidingWindowStore(long windowMillis, long bucketMillis, long futureMillis, boolean percentiles) {
+        super(windowMillis, bucketMillis, futureMillis, percentiles);
+        this.buckets = new AtomicReferenceArray<>(capacity());
+        clear();
+    }
+
+    @Override
+    public boolean add(long timestamp, double amount, long units) {
+        long key = alignToBucket(timestamp);
+        Bucket bucket = bucketFor(key);
+        if (bucket == null) {
+            return false;
+        }
+        bucket.add(amount, units);
+        markDirty(indexOf(key));
+        return true;
+    }
+
+    @Override
+    public boolean merge(long timestamp, Statistics statistics, long[] bins) {
+        long key = alignToBucket(timestamp);
+        Bucket bucket = bucketFor(key);
+        if (bucket == null) {
+            return false;
+        }
+        bucket.merge(statistics, bins);
+        markDirty(indexOf(key));
+        return true;
+    }
+
+    @Override
+    public Statistics get(long timestamp) {
+        long key = alignToBucket(timestamp);
+        Bucket bucket = buckets.get(indexOf(key));
+        long count = bucket.count.sum();
+        if (bucket.key != key || count == 0) {
+            return null;
+        }
+        Statistics statistics = toStatistics(bucket.sum.sum(), bucket.units.sum(), count, bucket.max.get(),
+            bucket.min.get());
+        long[] bins = new long[binCount()];
+        bucket.addBinsTo(bins);
+        setQuantiles(statistics, bins);
+        return statistics;
+    }
+
+    @Override
+    public int evict(long windowStartTimestamp) {
+        return evict(windowStartTimestamp, null);
+    }
+
+    @Override
+    public int evict(long windowStartTimestamp, BucketConsumer consumer) {
+        int evicted = 0;
+        long[] bins = null;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.key != EMPTY && bucket.key < windowStartTimestamp
+                && buckets.compareAndSet(i, bucket, EMPTY_BUCKET)) {
+                evicted++;
+                long count = bucket.count.sum();
+                if (consumer != null && count > 0) {
+                    if (bins == null) {
+                        bins = new long[binCount()];
+                    }
+                    Arrays.fill(bins, 0);
+                    bucket.addBinsTo(bins);
+                    consumer.accept(bucket.key, toStatistics(bucket.sum.sum(), bucket.units.sum(), count,
+                        bucket.max.get(), bucket.min.get()), bins);
+                }
+            }
+        }
+        return evicted;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            if (buckets.get(i).count.sum() > 0) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    void resetSlots() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, EMPTY_BUCKET);
+        }
+    }
+
+    @Override
+    void visitSlot(int slot, long fromTimestamp, long toTimestamp, long[] bins, BucketConsumer consumer) {
+        Bucket bucket = buckets.get(slot);
+        long count = bucket.count.sum();
+        if (count == 0 || bucket.key < fromTimestamp || bucket.key >= toTimestamp) {
+            return;
+        }
+        Arrays.fill(bins, 0);
+        bucket.addBinsTo(bins);
+        consumer.accept(bucket.key,
+            toStatistics(bucket.sum.sum(), bucket.units.sum(), count, bucket.max.get(), bucket.min.get()), bins);
+    }
+
+    @Override
+    void refreshSlot(int slot, long windowStartTimestamp) {
+        Bucket bucket = buckets.get(slot);
+        // count is read first: every update it reflects has already been applied to the other cells
+        long count = bucket.count.sum();
+        if (count == 0 || bucket.key < windowStartTimestamp) {
+            index.clear(slot);
+        } else {
+            Arrays.fill(slotBins, 0);
+            bucket.addBinsTo(slotBins);
+            index.set(slot, bucket.key, bucket.sum.sum(), bucket.units.sum(), count, bucket.min.get(), bucket.max.get(),
+                slotBins);
+        }
+    }
+
+    /**
+     * @return bucket tagged with the key, or null if its slot is already taken by a newer period
+     */
+    private Bucket bucketFor(long key) {
+        int index = indexOf(key);
+        Bucket fresh = null;
+        while (true) {
+            Bucket current = buckets.get(index);
+            if (current.key == key) {
+                return current;
+            }
+            if (current.key > key) {
+                return null;
+            }
+            if (fresh == null) {
+                fresh = new Bucket(key, binCount());
+            }
+            // a writer still holding the replaced bucket belongs to an expired period, so losing it is fine
+            if (buckets.compareAndSet(index, current, fresh)) {
+                if (current.count.sum() > 0) {
+                    countOverwritten();
+                }
+                return fresh;
+            }
+        }
+    }
+
+    private static final class Bucket {
+        final long key;
+        final DoubleAdder sum = new DoubleAdder();
+        final LongAdder units = new LongAdder();
+        final LongAdder count = new LongAdder();
+        final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+        final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+        final AtomicLongArray bins;
+
+        Bucket(long key, int binCount) {
+            this.key = key;
+            this.bins = new AtomicLongArray(binCount);
+        }
+
+        void add(double amount, long units) {
+            max.accumulate(amount);
+            min.accumulate(amount);
+            sum.add(amount);
+            if (units != 0) {
+                this.units.add(units);
+            }
+            if (bins.length() > 0) {
+                bins.getAndIncrement(QuantileSketch.binOf(amount));
+            }
+            count.increment(); // last, so readers seeing the count also see the rest
+        }
+
+        void merge(Statistics statistics, long[] counts) {
+            max.accumulate(statistics.getMax());
+            min.accumulate(statistics.getMin());
+            sum.add(statistics.getSum());
+            if (statistics.getUnits() != 0) {
+                units.add(statistics.getUnits());
+            }
+            for (int bin = 0; bin < Math.min(counts.length, bins.length()); bin++) {
+                if (counts[bin] != 0) {
+                    bins.getAndAdd(bin, counts[bin]);
+                }
+            }
+            count.add(statistics.getCount());
+        }
+
+        void addBinsTo(long[] counts) {
+            for (int bin = 0; bin < counts.length; bin++) {
+                counts[bin] += bins.get(bin);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package company.challenge.store;
+
+import company.challenge.domain.Statistics;
+import lombok.Value;
+
+@Value
+public class WindowAggregate {
+    Statistics statistics;
+
+    /**
+     * Key of the oldest bucket included, Long.MAX_VALUE if the window is empty.
+     */
+    long oldestKey;
+
+    /**
+     * {@link SlidingWindowStore#getVersion()} the aggregate was read at.
+     */
+    long version;
+}
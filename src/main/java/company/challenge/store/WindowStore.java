@@ -0,0 +1,116 @@
+package company.challenge.store;
+
+import company.challenge.domain.Statistics;
+
+/**
+ * Ring of buckets covering {@code bucketMillis} each, keyed by the bucket start,
+ * holding transactions of the last {@code windowMillis}.
+ */
+public interface WindowStore {
+
+    /**
+     * @return false if the bucket is already reused by a newer period
+     */
+    boolean add(long timestamp, double amount);
+
+    /**
+     * Also adds the amount in minor units to the exact sum of the bucket, wrapping on overflow, so the sum of
+     * several buckets is still exact as long as it fits in a long.
+     *
+     * @return false if the bucket is already reused by a newer period
+     */
+    boolean add(long timestamp, double amount, long units);
+
+    /**
+     * Merges statistics pre-aggregated for a single bucket into it in one operation, including their exact sum.
+     *
+     * @param bins amounts counted per {@link QuantileSketch#binOf(double)}
+     */
+    boolean merge(long timestamp, Statistics statistics, long[] bins);
+
+    long getWindowMillis();
+
+    long getBucketMillis();
+
+    /**
+     * @return how far ahead of the window end buckets are kept without taking the slots of the window
+     */
+    long getFutureMillis();
+
+    /**
+     * @return start of the bucket holding the timestamp
+     */
+    long alignToBucket(long timestamp);
+
+    /**
+     * @return true if buckets were written since the last aggregate
+     */
+    boolean isModified();
+
+    /**
+     * @return number of aggregates which folded in new writes, changes whenever a previous aggregate may be stale
+     */
+    long getVersion();
+
+    Statistics aggregate(long windowStartTimestamp);
+
+    WindowAggregate aggregateWindow(long windowStartTimestamp);
+
+    /**
+     * Aggregates each window from a single pass over the buckets changed since the previous call.
+     *
+     * @param horizonTimestamp start of the longest window served, older buckets are dropped from the index;
+     *                         keeping it the same across calls avoids rebuilding the index
+     */
+    WindowAggregate[] aggregateWindows(long horizonTimestamp, long... windowStartTimestamps);
+
+    /**
+     * @return statistics of the bucket holding the given timestamp or null if there is none
+     */
+    Statistics get(long timestamp);
+
+    /**
+     * Passes every non-empty bucket started at or after the window start to the consumer, in no particular order.
+     */
+    void forEachBucket(long windowStartTimestamp, BucketConsumer consumer);
+
+    /**
+     * Passes every non-empty bucket started in [fromTimestamp, toTimestamp) to the consumer, in no particular order.
+     * A range shorter than the store only visits the slots of its periods.
+     */
+    void forEachBucket(long fromTimestamp, long toTimestamp, BucketConsumer consumer);
+
+    /**
+     * Resets buckets older than the window start.
+     *
+     * @return number of evicted buckets
+     */
+    int evict(long windowStartTimestamp);
+
+    /**
+     * Resets buckets older than the window start, passing each non-empty one to the consumer as it is reset,
+     * so every bucket, even one a late write created again, reaches the consumer once per eviction.
+     *
+     * @return number of evicted buckets
+     */
+    int evict(long windowStartTimestamp, BucketConsumer consumer);
+
+    /**
+     * @return true if buckets keep a {@link QuantileSketch} histogram for p50/p95/p99, otherwise bins merged in
+     * are dropped, buckets are visited with no bins and the percentiles are 0
+     */
+    boolean hasPercentiles();
+
+    /**
+     * @return non-empty buckets whose slot a write rolled over to a newer period before {@link #evict} reset them,
+     * so the eviction run never folded them into the rollups
+     */
+    long getOverwrittenBuckets();
+
+    /**
+     * @return number of non-empty buckets
+     */
+    int size();
+
+    void clear();
+}
@@ -1,18 +1,57 @@
 package company.challenge.validation;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import java.time.Duration;
+
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.SERVLET;
+
 @Slf4j
 @ControllerAdvice
+@ConditionalOnWebApplication(type = SERVLET)
 public class ControllerExceptionHandler {
-    @ResponseStatus(HttpStatus.NO_CONTENT)
-    @ExceptionHandler({MethodArgumentNotValidException.class})
-    public void handleConflict(MethodArgumentNotValidException e) {
+
+    @Value("${statistics.ingest.async.retry-after:1s}")
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler({JsonProcessingException.class})
+    public void handleMalformedBatch(JsonProcessingException e) {
+        log.debug(e.getMessage());
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler({InvalidAmountException.class})
+    public void handleInvalidAmount(InvalidAmountException e) {
+        log.debug(e.getMessage());
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler({InvalidWindowException.class})
+    public void handleInvalidWindow(InvalidWindowException e) {
+        log.debug(e.getMessage());
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler({TooManySubscribersException.class})
+    public void handleTooManySubscribers(TooManySubscribersException e) {
+        log.debug(e.getMessage());
+    }
+
+    @ExceptionHandler({OverloadedException.class})
+    public ResponseEntity<Void> handleOverloaded(OverloadedException e) {
         log.debug(e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, OverloadedException.retryAfter(retryAfter))
+            .build();
     }
 }
@@ -0,0 +1,11 @@
+package company.challenge.validation;
+
+/**
+ * Transaction amount is not a number or does not fit in a long of minor units.
+ */
+public class InvalidAmountException extends RuntimeException {
+
+    public InvalidAmountException(String message) {
+        super(message);
+    }
+}
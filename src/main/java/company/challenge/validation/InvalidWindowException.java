@@ -0,0 +1,11 @@
+package company.challenge.validation;
+
+/**
+ * Requested statistics window is malformed or longer than the store holds.
+ */
+public class InvalidWindowException extends RuntimeException {
+
+    public InvalidWindowException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,21 @@
+package company.challenge.validation;
+
+import java.time.Duration;
+
+/**
+ * Transaction shed because the ingest ring is full, answered with 503 and a Retry-After.
+ */
+public class OverloadedException extends RuntimeException {
+
+    public OverloadedException(String message) {
+        super(message);
+    }
+
+    /**
+     * @return Retry-After header value, the delay in whole seconds rounded up, at least 1
+     */
+    public static String retryAfter(Duration delay) {
+        long seconds = delay.getSeconds() + (delay.getNano() > 0 ? 1 : 0);
+        return String.valueOf(Math.max(1, seconds));
+    }
+}
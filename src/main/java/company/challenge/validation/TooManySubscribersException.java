@@ -0,0 +1,16 @@
+package company.challenge.validation;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Statistics stream already serves statistics.stream.max-subscribers clients.
+ * Raised when the events are subscribed, before the response is committed, so WebFlux answers with the status below.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class TooManySubscribersException extends RuntimeException {
+
+    public TooManySubscribersException(String message) {
+        super(message);
+    }
+}
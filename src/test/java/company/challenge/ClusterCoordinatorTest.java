@@ -0,0 +1,121 @@
+package company.challenge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import company.challenge.dto.StatisticsDTO;
+import company.challenge.store.BucketCodec;
+import company.challenge.store.SlidingWindowStore;
+import company.challenge.store.WindowStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.time.Instant.parse;
+import static java.time.ZoneOffset.UTC;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClusterCoordinatorTest {
+
+    private Clock clock;
+
+    private WindowStore store;
+
+    private StatisticsService service;
+
+    private final List<HttpServer> peers = new ArrayList<>();
+
+    private double DELTA = 0.01;
+
+    @BeforeEach
+    public void setup() {
+        clock = Clock.fixed(parse("2018-03-18T12:00:00Z"), UTC);
+        store = new SlidingWindowStore(60);
+        service = new StatisticsService(clock, store, new ObjectMapper());
+    }
+
+    @AfterEach
+    public void stopPeers() {
+        for (HttpServer peer : peers) {
+            peer.stop(0);
+        }
+    }
+
+    @Test
+    public void testMergesPeers() throws IOException {
+        long now = clock.millis();
+        service.save(10, now - 1_000);
+        WindowStore first = new SlidingWindowStore(60);
+        first.add(now - 1_000, 30);
+        first.add(now - 20_000, 5);
+        WindowStore second = new SlidingWindowStore(60);
+        second.add(now - 59_000, 100);
+        second.add(now - 70_000, 1000);
+
+        StatisticsDTO statistics = coordinator(startPeer(first), startPeer(second)).getStatistics();
+
+        assertEquals(4, statistics.getCount());
+        assertEquals(145, statistics.getSum().doubleValue(), DELTA);
+        assertEquals(5, statistics.getMin(), DELTA);
+        assertEquals(100, statistics.getMax(), DELTA);
+        assertEquals(30, statistics.getP95(), 30 * 0.02);
+    }
+
+    @Test
+    public void testLeavesOutFailingPeer() throws IOException {
+        long now = clock.millis();
+        service.save(10, now - 1_000);
+        WindowStore peer = new SlidingWindowStore(60);
+        peer.add(now - 1_000, 30);
+        String stoppedUrl;
+        try (ServerSocket stopped = new ServerSocket(0)) {
+            stoppedUrl = "http://localhost:" + stopped.getLocalPort();
+        }
+
+        ClusterCoordinator coordinator = coordinator(startPeer(peer), stoppedUrl);
+
+        assertEquals(2, coordinator.getStatistics().getCount());
+        assertEquals(1, coordinator.getFailedFetches());
+    }
+
+    @Test
+    public void testReusesResultWithinTtl() throws IOException {
+        long now = clock.millis();
+        service.save(10, now - 1_000);
+        ClusterCoordinator coordinator = coordinator(startPeer(new SlidingWindowStore(60)));
+        assertEquals(1, coordinator.getStatistics().getCount());
+
+        service.save(10, now - 1_000);
+
+        assertEquals(1, coordinator.getStatistics().getCount());
+        assertEquals(2, service.getStatistics().getCount());
+    }
+
+    private ClusterCoordinator coordinator(String... peers) {
+        return new ClusterCoordinator(service, store, clock, Arrays.asList(peers),
+            Duration.ofSeconds(1), Duration.ofSeconds(1));
+    }
+
+    private String startPeer(WindowStore buckets) throws IOException {
+        HttpServer peer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        peer.createContext(ClusterCoordinator.BUCKETS_PATH, exchange -> {
+            byte[] body = BucketCodec.encode(buckets, clock.millis() - buckets.getWindowMillis());
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        peer.start();
+        peers.add(peer);
+        return "http://localhost:" + peer.getAddress().getPort() + "/";
+    }
+}
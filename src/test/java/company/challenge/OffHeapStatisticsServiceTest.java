@@ -0,0 +1,12 @@
+package company.challenge;
+
+import company.challenge.store.OffHeapWindowStore;
+import company.challenge.store.WindowStore;
+
+public class OffHeapStatisticsServiceTest extends StatisticsServiceTest {
+
+    @Override
+    protected WindowStore createStore() {
+        return new OffHeapWindowStore(60_000, 1000);
+    }
+}
@@ -0,0 +1,129 @@
+package company.challenge;
+
+import company.challenge.dto.StatisticsDTO;
+import company.challenge.ingest.TransactionParser;
+import company.challenge.store.WindowStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "spring.main.web-application-type=reactive")
+@AutoConfigureWebTestClient
+public class ReactiveStatisticsIntegrationTest {
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private Clock clock;
+
+    @Autowired
+    private WindowStore store;
+
+    @BeforeEach
+    public void clearCache() {
+        store.clear();
+    }
+
+    @Test
+    public void returnEmptyOnFirstStatisticsCall() {
+        client.get().uri("/statistics").accept(APPLICATION_JSON)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.sum").isEqualTo(0.0)
+            .jsonPath("$.count").isEqualTo(0);
+    }
+
+    @Test
+    public void createTransactionFailsOlderThan60() {
+        long olderBy61Sec = clock.instant().minusSeconds(61).toEpochMilli();
+        client.post().uri("/transactions").contentType(APPLICATION_JSON)
+            .bodyValue("{\"amount\":1000,\"timestamp\":" + olderBy61Sec + "}")
+            .exchange()
+            .expectStatus().isNoContent();
+    }
+
+    @Test
+    public void createTransactionFailsOnMalformedBody() {
+        client.post().uri("/transactions").contentType(APPLICATION_JSON)
+            .bodyValue("{\"amount\":")
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void createTransactionFailsOnTooLargeBody() {
+        client.post().uri("/transactions").contentType(APPLICATION_JSON)
+            .bodyValue("{\"amount\":1000,\"key\":\"" + "k".repeat(TransactionParser.MAX_BODY_SIZE) + "\"}")
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    @Test
+    public void testCoupleTransactions() {
+        client.post().uri("/transactions").contentType(APPLICATION_JSON)
+            .bodyValue("{\"amount\":1000,\"timestamp\":" + clock.instant().minusMillis(100).toEpochMilli() + "}")
+            .exchange()
+            .expectStatus().isCreated();
+
+        client.post().uri("/transactions").contentType(APPLICATION_JSON)
+            .bodyValue("{\"amount\":2000,\"timestamp\":" + clock.instant().minusMillis(2000).toEpochMilli() + "}")
+            .exchange()
+            .expectStatus().isCreated();
+
+        client.get().uri("/statistics").accept(APPLICATION_JSON)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.sum").isEqualTo(3000.0)
+            .jsonPath("$.avg").isEqualTo(1500.0)
+            .jsonPath("$.max").isEqualTo(2000.0)
+            .jsonPath("$.min").isEqualTo(1000.0)
+            .jsonPath("$.count").isEqualTo(2);
+    }
+
+    @Test
+    public void createTransactionsBatchReportsRejected() {
+        long now = clock.instant().toEpochMilli();
+        client.post().uri("/transactions/batch").contentType(APPLICATION_JSON)
+            .bodyValue("[{\"amount\":1000,\"timestamp\":" + (now - 100) + "},"
+                + "{\"amount\":5000,\"timestamp\":" + (now - 61000) + "}]")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.accepted").isEqualTo(1)
+            .jsonPath("$.rejected").isEqualTo(1);
+    }
+
+    @Test
+    public void streamPushesStatistics() {
+        client.post().uri("/transactions").contentType(APPLICATION_JSON)
+            .bodyValue("{\"amount\":1000,\"timestamp\":" + clock.instant().minusMillis(100).toEpochMilli() + "}")
+            .exchange()
+            .expectStatus().isCreated();
+
+        StatisticsDTO statistics = client.get().uri("/statistics/stream").accept(TEXT_EVENT_STREAM)
+            .exchange()
+            .expectStatus().isOk()
+            .returnResult(StatisticsDTO.class)
+            .getResponseBody()
+            .blockFirst(Duration.ofSeconds(5));
+
+        assertEquals(1, statistics.getCount());
+    }
+}
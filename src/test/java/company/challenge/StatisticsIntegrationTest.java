@@ -2,28 +2,32 @@ package company.challenge;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import company.challenge.domain.Statistics;
 import company.challenge.dto.TransactionDTO;
+import company.challenge.store.DimensionStore;
+import company.challenge.store.WindowStore;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.time.Clock;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static java.util.stream.LongStream.rangeClosed;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.core.Is.is;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -42,11 +46,15 @@ public class StatisticsIntegrationTest {
     private Clock clock;
 
     @Autowired
-    private ConcurrentHashMap<Long, Statistics> cache;
+    private WindowStore store;
+
+    @Autowired
+    private DimensionStore dimensions;
 
     @BeforeEach
     public void clearCache() {
-        cache.clear();
+        store.clear();
+        dimensions.clear();
     }
 
     @Test
@@ -69,6 +77,14 @@ public class StatisticsIntegrationTest {
             .andExpect(status().isNoContent());
     }
 
+    @Test
+    public void createTransactionFailsOnMalformedBody() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.post("/transactions")
+            .content("{\"amount\":1000,\"timestamp\":}")
+            .contentType(APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void createTransactionCheckStatus() throws Exception {
         mvc.perform(MockMvcRequestBuilders.post("/transactions")
@@ -94,6 +110,59 @@ public class StatisticsIntegrationTest {
             .andExpect(jsonPath("$.count", greaterThanOrEqualTo(1)));
     }
 
+    @Test
+    public void testStatisticsPerWindow() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.post("/transactions")
+            .content("{\"amount\":1000,\"timestamp\":" + clock.instant().minusMillis(100).toEpochMilli() + "}")
+            .contentType(APPLICATION_JSON))
+            .andExpect(status().isCreated());
+
+        mvc.perform(MockMvcRequestBuilders.post("/transactions")
+            .content("{\"amount\":2000,\"timestamp\":" + clock.instant().minusSeconds(30).toEpochMilli() + "}")
+            .contentType(APPLICATION_JSON))
+            .andExpect(status().isCreated());
+
+        mvc.perform(MockMvcRequestBuilders.get("/statistics?window=10s,60s")
+            .accept(APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.10s.count", is(1)))
+            .andExpect(jsonPath("$.10s.sum", is(1000.0)))
+            .andExpect(jsonPath("$.60s.count", is(2)))
+            .andExpect(jsonPath("$.60s.max", is(2000.0)));
+    }
+
+    @Test
+    public void testStatisticsWindowLongerThanMaxWindow() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get("/statistics?window=2m")
+            .accept(APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testStatisticsPerKey() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.post("/transactions")
+            .content("{\"amount\":1000,\"key\":\"merchant-1\",\"timestamp\":"
+                + clock.instant().minusMillis(100).toEpochMilli() + "}")
+            .contentType(APPLICATION_JSON))
+            .andExpect(status().isCreated());
+
+        mvc.perform(MockMvcRequestBuilders.post("/transactions")
+            .content("{\"amount\":2000,\"timestamp\":" + clock.instant().minusMillis(100).toEpochMilli() + "}")
+            .contentType(APPLICATION_JSON))
+            .andExpect(status().isCreated());
+
+        mvc.perform(MockMvcRequestBuilders.get("/statistics/merchant-1")
+            .accept(APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.sum", is(1000.0)))
+            .andExpect(jsonPath("$.count", is(1)));
+
+        mvc.perform(MockMvcRequestBuilders.get("/statistics/merchant-2")
+            .accept(APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.count", is(0)));
+    }
+
     @Test
     public void testCoupleTransactions() throws Exception {
         mvc.perform(MockMvcRequestBuilders.post("/transactions")
@@ -116,6 +185,60 @@ public class StatisticsIntegrationTest {
             .andExpect(jsonPath("$.count", is(2)));
     }
 
+    @Test
+    public void createTransactionsBatchReportsRejected() throws Exception {
+        long now = clock.instant().toEpochMilli();
+        mvc.perform(MockMvcRequestBuilders.post("/transactions/batch")
+            .content("[{\"amount\":1000,\"timestamp\":" + (now - 100) + "},"
+                + "{\"amount\":3000,\"timestamp\":" + (now - 2000) + "},"
+                + "{\"amount\":5000,\"timestamp\":" + (now - 61000) + "}]")
+            .contentType(APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.accepted", is(2)))
+            .andExpect(jsonPath("$.rejected", is(1)));
+
+        mvc.perform(MockMvcRequestBuilders.get("/statistics")
+            .accept(APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.sum", is(4000.0)))
+            .andExpect(jsonPath("$.avg", is(2000.0)))
+            .andExpect(jsonPath("$.max", is(3000.0)))
+            .andExpect(jsonPath("$.min", is(1000.0)))
+            .andExpect(jsonPath("$.count", is(2)));
+    }
+
+    @Test
+    public void createTransactionsBatchFromNdjson() throws Exception {
+        long now = clock.instant().toEpochMilli();
+        mvc.perform(MockMvcRequestBuilders.post("/transactions/batch")
+            .content("{\"amount\":1000,\"timestamp\":" + (now - 100) + "}\n"
+                + "{\"amount\":2000,\"timestamp\":" + (now - 200) + "}\n")
+            .contentType(StatisticsController.APPLICATION_NDJSON_VALUE))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.accepted", is(2)))
+            .andExpect(jsonPath("$.rejected", is(0)));
+
+        mvc.perform(MockMvcRequestBuilders.get("/statistics")
+            .accept(APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.sum", is(3000.0)))
+            .andExpect(jsonPath("$.count", is(2)));
+    }
+
+    @Test
+    public void createTransactionsBatchFailsOnMalformedItem() throws Exception {
+        long now = clock.instant().toEpochMilli();
+        mvc.perform(MockMvcRequestBuilders.post("/transactions/batch")
+            .content("[{\"amount\":1000,\"timestamp\":" + now + "},{\"amount\":]")
+            .contentType(APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+
+        mvc.perform(MockMvcRequestBuilders.get("/statistics")
+            .accept(APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.count", is(0)));
+    }
+
     @Test
     public void loadTest1000() throws Exception {
         List<TransactionDTO> transactions = rangeClosed(1, 1000)
@@ -157,6 +280,38 @@ public class StatisticsIntegrationTest {
             .andExpect(jsonPath("$.count", is(1000)));
     }
 
+    @Test
+    public void statisticsNotModifiedForSameEtag() throws Exception {
+        String etag = mvc.perform(MockMvcRequestBuilders.get("/statistics").accept(APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.count", is(0)))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(MockMvcRequestBuilders.get("/statistics").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string(HttpHeaders.ETAG, etag));
+
+        mvc.perform(MockMvcRequestBuilders.post("/transactions")
+            .content("{\"amount\":1000,\"timestamp\":" + clock.instant().toEpochMilli() + "}")
+            .contentType(APPLICATION_JSON))
+            .andExpect(status().isCreated());
+
+        mvc.perform(MockMvcRequestBuilders.get("/statistics").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.count", is(1)));
+    }
+
+    @Test
+    public void exposesPrometheusMetrics() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get("/statistics"))
+            .andExpect(status().isOk());
+
+        mvc.perform(MockMvcRequestBuilders.get("/management/prometheus"))
+            .andExpect(status().isOk())
+            .andExpect(content().string(containsString("statistics_get_seconds_count")))
+            .andExpect(content().string(containsString("statistics_save_seconds_bucket")));
+    }
+
     private TransactionDTO getTransactionDTO(long oneSecOld, double amount) {
         TransactionDTO transactionDTO = new TransactionDTO();
         transactionDTO.setAmount(amount);
@@ -1,17 +1,28 @@
 package company.challenge;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import company.challenge.domain.Statistics;
+import company.challenge.dto.BatchResultDTO;
 import company.challenge.dto.StatisticsDTO;
 import company.challenge.dto.TransactionDTO;
+import company.challenge.ingest.AmountScale;
+import company.challenge.ingest.TimestampPolicy;
+import company.challenge.ingest.TransactionRing;
+import company.challenge.store.SlidingWindowStore;
+import company.challenge.store.WindowStore;
+import company.challenge.validation.InvalidWindowException;
+import company.challenge.validation.OverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.math.BigDecimal;
 import java.time.Clock;
+import java.time.Duration;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static java.time.Instant.ofEpochMilli;
@@ -25,7 +36,7 @@ public class StatisticsServiceTest {
 
     private StatisticsService service;
 
-    private ConcurrentHashMap<Long, Statistics> cache;
+    private WindowStore store;
 
     private Clock clock;
 
@@ -34,9 +45,12 @@ public class StatisticsServiceTest {
     @BeforeEach
     public void setup() {
         clock = Clock.fixed(parse("2018-03-18T12:00:00Z"), UTC);
-        cache = new ConcurrentHashMap<>(60);
-        service = new StatisticsService(clock, cache);
-        ReflectionTestUtils.setField(service, "statisticsWindowSize", 60);
+        store = createStore();
+        service = new StatisticsService(clock, store, new ObjectMapper());
+    }
+
+    protected WindowStore createStore() {
+        return new SlidingWindowStore(60);
     }
 
     @Test
@@ -51,9 +65,9 @@ public class StatisticsServiceTest {
 
         // then
         long cacheKey = ofEpochMilli(oneSecOld).truncatedTo(SECONDS).toEpochMilli();
-        assertTrue(cache.containsKey(cacheKey));
+        Statistics statistics = store.get(cacheKey);
+        assertNotNull(statistics);
 
-        Statistics statistics = cache.get(cacheKey);
         assertEquals(transactionDTO.getAmount(), statistics.getAvg(), DELTA);
         assertEquals(transactionDTO.getAmount(), statistics.getMin(), DELTA);
         assertEquals(transactionDTO.getAmount(), statistics.getMax(), DELTA);
@@ -76,9 +90,9 @@ public class StatisticsServiceTest {
 
         // then
         long cacheKey = ofEpochMilli(oneSecOld).truncatedTo(SECONDS).toEpochMilli();
-        assertTrue(cache.containsKey(cacheKey));
+        Statistics statistics = store.get(cacheKey);
+        assertNotNull(statistics);
 
-        Statistics statistics = cache.get(cacheKey);
         assertEquals(transactionDTO.getAmount() + transactionDTO1.getAmount(),
                 statistics.getSum(), DELTA);
         assertEquals(transactionDTO.getAmount(), statistics.getAvg(), DELTA);
@@ -100,9 +114,9 @@ public class StatisticsServiceTest {
         // then
         StatisticsDTO statistics = service.getStatistics();
 
-        assertEquals(60, cache.size());
-        assertEquals(60 * 1000, statistics.getSum(), DELTA);
-        assertEquals(1000, statistics.getAvg(), DELTA);
+        assertEquals(60, store.size());
+        assertEquals(60 * 1000, statistics.getSum().doubleValue(), DELTA);
+        assertEquals(1000, statistics.getAvg().doubleValue(), DELTA);
         assertEquals(1000, statistics.getMin(), DELTA);
         assertEquals(1000, statistics.getMax(), DELTA);
         assertEquals(60, statistics.getCount());
@@ -129,9 +143,9 @@ public class StatisticsServiceTest {
         // then
         StatisticsDTO statistics = service.getStatistics();
 
-        assertEquals(5, cache.size());
-        assertEquals(7020.0, statistics.getSum(), DELTA);
-        assertEquals(585.0, statistics.getAvg(), DELTA);
+        assertEquals(5, store.size());
+        assertEquals(7020.0, statistics.getSum().doubleValue(), DELTA);
+        assertEquals(585.0, statistics.getAvg().doubleValue(), DELTA);
         assertEquals(20.0, statistics.getMin(), DELTA);
         assertEquals(2000.0, statistics.getMax(), DELTA);
         assertEquals(12, statistics.getCount());
@@ -139,18 +153,20 @@ public class StatisticsServiceTest {
 
     @Test
     public void testCacheCleanup() {
-        cache.put(clock.instant().minusSeconds(90).toEpochMilli(), new Statistics());
-        cache.put(clock.instant().minusSeconds(62).toEpochMilli(), new Statistics());
-        cache.put(clock.instant().minusSeconds(61).toEpochMilli(), new Statistics());
+        store.add(clock.instant().minusSeconds(90).toEpochMilli(), 1);
+        store.add(clock.instant().minusSeconds(62).toEpochMilli(), 1);
+        store.add(clock.instant().minusSeconds(61).toEpochMilli(), 1);
         TransactionDTO transaction = getTransactionDTO(
                 clock.instant().minusMillis(2000).toEpochMilli(), 20);
 
-        assertEquals(3, cache.size());
+        assertEquals(3, store.size());
 
         service.save(transaction);
+        assertEquals(4, store.size());
 
-        assertEquals(1, cache.size());
-        Statistics statistics = cache.get(TimeUtil.alignMillisToSeconds(transaction.getTimestamp()));
+        assertEquals(3, service.cleanCache());
+        assertEquals(1, store.size());
+        Statistics statistics = store.get(transaction.getTimestamp());
         assertEquals(20.0, statistics.getSum(), DELTA);
         assertEquals(20.0, statistics.getAvg(), DELTA);
         assertEquals(20.0, statistics.getMin(), DELTA);
@@ -158,6 +174,232 @@ public class StatisticsServiceTest {
         assertEquals(1, statistics.getCount());
     }
 
+    @Test
+    public void testBatchMergesEachSecondOnce() {
+        TransactionBatch batch = service.newBatch();
+        batch.add(getTransactionDTO(clock.instant().minusMillis(100).toEpochMilli(), 10));
+        batch.add(getTransactionDTO(clock.instant().minusMillis(900).toEpochMilli(), 30));
+        batch.add(getTransactionDTO(clock.instant().minusMillis(1500).toEpochMilli(), 50));
+        batch.add(getTransactionDTO(clock.instant().minusSeconds(60).toEpochMilli(), 70));
+
+        BatchResultDTO result = batch.commit();
+
+        assertEquals(3, result.getAccepted());
+        assertEquals(1, result.getRejected());
+        assertEquals(2, store.size());
+        Statistics statistics = store.get(clock.instant().minusMillis(100).toEpochMilli());
+        assertEquals(40.0, statistics.getSum(), DELTA);
+        assertEquals(10.0, statistics.getMin(), DELTA);
+        assertEquals(30.0, statistics.getMax(), DELTA);
+        assertEquals(2, statistics.getCount());
+
+        StatisticsDTO total = service.getStatistics();
+        assertEquals(90.0, total.getSum().doubleValue(), DELTA);
+        assertEquals(3, total.getCount());
+    }
+
+    @Test
+    public void testBatchCountsKeysOfMergedBucketsOnCommit() {
+        long now = clock.millis();
+        TransactionBatch batch = service.newBatch();
+        TransactionDTO lost = getTransactionDTO(now - 59_999, 10);
+        lost.setKey("a");
+        batch.add(lost);
+        TransactionDTO kept = getTransactionDTO(now - 100, 20);
+        kept.setKey("a");
+        batch.add(kept);
+        assertEquals(0, service.getStatistics("a").getCount());
+
+        // a clock running ahead takes the slot of the oldest bucket before the batch commits
+        store.add(now + 1_000, 1);
+        BatchResultDTO result = batch.commit();
+
+        assertEquals(1, result.getAccepted());
+        assertEquals(1, result.getRejected());
+        StatisticsDTO keyed = service.getStatistics("a");
+        assertEquals(1, keyed.getCount());
+        assertEquals(20.0, keyed.getSum().doubleValue(), DELTA);
+    }
+
+    @Test
+    public void testSnapshotExpiresWithOldestBucket() {
+        long oldest = clock.instant().minusSeconds(60).toEpochMilli();
+        service.save(getTransactionDTO(oldest, 10));
+        service.save(getTransactionDTO(clock.instant().minusSeconds(1).toEpochMilli(), 30));
+
+        StatisticsDTO statistics = service.getStatistics();
+        assertEquals(2, statistics.getCount());
+        assertSame(statistics, service.getStatistics());
+
+        // the oldest bucket is still in the window at the same millisecond
+        ReflectionTestUtils.setField(service, "clock", Clock.offset(clock, Duration.ofMillis(0)));
+        assertSame(statistics, service.getStatistics());
+
+        ReflectionTestUtils.setField(service, "clock", Clock.offset(clock, Duration.ofMillis(1)));
+        StatisticsDTO expired = service.getStatistics();
+        assertEquals(1, expired.getCount());
+        assertEquals(30.0, expired.getSum().doubleValue(), DELTA);
+    }
+
+    @Test
+    public void testSnapshotRefreshedAfterWrite() {
+        service.save(getTransactionDTO(clock.instant().minusSeconds(1).toEpochMilli(), 10));
+        assertEquals(1, service.getStatistics().getCount());
+
+        service.save(getTransactionDTO(clock.instant().minusSeconds(1).toEpochMilli(), 5));
+
+        StatisticsDTO statistics = service.getStatistics();
+        assertEquals(2, statistics.getCount());
+        assertEquals(5.0, statistics.getMin(), DELTA);
+    }
+
+    @Test
+    public void testRangeWithinWindow() {
+        long now = clock.millis();
+        service.save(getTransactionDTO(now - 30_000, 10));
+        service.save(getTransactionDTO(now - 10_500, 20));
+        service.save(getTransactionDTO(now - 1_000, 40));
+
+        StatisticsDTO statistics = service.getStatistics(now - 11_000, now - 1_000);
+        assertEquals(1, statistics.getCount());
+        assertEquals(20.0, statistics.getSum().doubleValue(), DELTA);
+
+        assertEquals(70.0, service.getStatistics(now - 60_000, now).getSum().doubleValue(), DELTA);
+        assertThrows(InvalidWindowException.class, () -> service.getStatistics(now, now));
+    }
+
+    @Test
+    public void testExactSums() {
+        service.setAmountScale(new AmountScale(2));
+        long timestamp = clock.millis() - 1_000;
+        for (int i = 0; i < 10; i++) {
+            service.save(0.1, timestamp);
+        }
+        TransactionBatch batch = service.newBatch();
+        batch.add(0.2, timestamp - 1_000, null);
+        batch.add(0.105, timestamp - 1_000, null);
+        batch.commit();
+
+        // ten times 0.1 add up to 0.9999999999999999 as doubles, 0.105 is rounded half-even to 0.10
+        StatisticsDTO statistics = service.getStatistics();
+        assertEquals(new BigDecimal("1.30"), statistics.getSum());
+        assertEquals(new BigDecimal("0.1083333333333333"), statistics.getAvg());
+        assertEquals(0.1, statistics.getMin(), 0);
+        assertEquals(12, statistics.getCount());
+    }
+
+    @Test
+    public void testSumsBeyondDoubleRange() {
+        long timestamp = clock.millis() - 1_000;
+        service.save(1e308, timestamp);
+        service.save(1e308, timestamp);
+
+        StatisticsDTO statistics = service.getStatistics();
+        assertEquals(Double.POSITIVE_INFINITY, statistics.getSum());
+        assertEquals(Double.POSITIVE_INFINITY, statistics.getAvg());
+        assertEquals(2, statistics.getCount());
+        assertNotNull(service.getEncodedStatistics());
+    }
+
+    @Test
+    public void testExactSumsBeyondLongFallBackToDouble() {
+        AmountScale amountScale = new AmountScale(2);
+        service.setAmountScale(amountScale);
+        long timestamp = clock.millis() - 1_000;
+        for (int i = 0; i < 5; i++) {
+            service.save(1e16, timestamp);
+        }
+
+        StatisticsDTO statistics = service.getStatistics();
+        assertEquals(5e16, statistics.getSum());
+        assertEquals(1e16, statistics.getAvg());
+        assertEquals(1, amountScale.getOverflows());
+    }
+
+    @Test
+    public void testEncodedOncePerSnapshot() {
+        service.save(10, clock.millis() - 1_000);
+        EncodedStatistics encoded = service.getEncodedStatistics();
+        assertTrue(new String(encoded.getJson()).contains("\"count\":1"));
+        assertSame(encoded, service.getEncodedStatistics());
+        assertTrue(encoded.matches(encoded.getEtag()));
+        assertTrue(encoded.matches("\"other\", W/" + encoded.getEtag()));
+        assertTrue(encoded.matches("*"));
+        assertFalse(encoded.matches(null));
+
+        service.save(20, clock.millis() - 1_000);
+        EncodedStatistics changed = service.getEncodedStatistics();
+        assertNotEquals(encoded.getEtag(), changed.getEtag());
+        assertFalse(changed.matches(encoded.getEtag()));
+        assertTrue(new String(changed.getJson()).contains("\"count\":2"));
+    }
+
+    @Test
+    public void testShedsWhenRingIsFull() {
+        TransactionRing ring = new TransactionRing(2);
+        service.setRing(ring);
+        long timestamp = clock.millis() - 1_000;
+        service.save(10, timestamp, "a");
+        service.save(20, timestamp);
+
+        assertThrows(OverloadedException.class, () -> service.save(30, timestamp));
+        assertEquals(1, service.getShedTransactions());
+        assertEquals(0, service.getStatistics().getCount());
+
+        IngestAggregator aggregator = new IngestAggregator(service, ring, 16);
+        assertEquals(2, aggregator.drain());
+        assertEquals(2, aggregator.getStoredTransactions());
+        StatisticsDTO statistics = service.getStatistics();
+        assertEquals(2, statistics.getCount());
+        assertEquals(30.0, statistics.getSum().doubleValue(), DELTA);
+        assertEquals(1, service.getStatistics("a").getCount());
+
+        service.save(30, timestamp);
+        assertEquals(1, ring.size());
+    }
+
+    @Test
+    public void testStoresRingAndStoresDirectlyOnceAggregatorStopped() {
+        TransactionRing ring = new TransactionRing(64);
+        service.setRing(ring);
+        IngestAggregator aggregator = new IngestAggregator(service, ring, 16);
+        aggregator.start();
+        long timestamp = clock.millis() - 1_000;
+        for (int i = 0; i < 10; i++) {
+            service.save(10, timestamp);
+        }
+        aggregator.stop();
+
+        assertFalse(aggregator.isRunning());
+        assertEquals(10, service.getStatistics().getCount());
+        // the web server still takes requests once the lifecycle beans stopped
+        service.save(10, timestamp, "a");
+        assertEquals(0, service.getShedTransactions());
+        assertEquals(0, ring.size());
+        assertEquals(11, service.getStatistics().getCount());
+        assertEquals(1, service.getStatistics("a").getCount());
+    }
+
+    @Test
+    public void testRecordsMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        service.bindTo(registry);
+
+        long now = clock.millis();
+        assertEquals(now - 1_000, service.admit(now - 1_000));
+        service.save(10, now - 1_000);
+        assertEquals(TimestampPolicy.REJECTED, service.admit(now - 61_000));
+        TransactionBatch batch = service.newBatch();
+        batch.add(getTransactionDTO(now - 70_000, 10));
+        batch.commit();
+        service.getStatistics();
+
+        assertEquals(1, registry.get("statistics.save").timer().count());
+        assertEquals(1, registry.get("statistics.get").timer().count());
+        assertEquals(2, registry.get("statistics.timestamp.skew").summary().count());
+        assertEquals(2, registry.get("statistics.transactions.late").functionCounter().count(), DELTA);
+        assertEquals(1, registry.get("statistics.buckets").gauge().value(), DELTA);
+    }
 
     private TransactionDTO getTransactionDTO(long oneSecOld, double amount) {
         TransactionDTO transactionDTO = new TransactionDTO();
@@ -0,0 +1,115 @@
+package company.challenge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import company.challenge.dto.StatisticsDTO;
+import company.challenge.store.SlidingWindowStore;
+import company.challenge.validation.TooManySubscribersException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.Disposable;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import static java.time.Instant.parse;
+import static java.time.ZoneOffset.UTC;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatisticsStreamTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private Clock clock;
+
+    private StatisticsService service;
+
+    @BeforeEach
+    public void setup() {
+        clock = Clock.fixed(parse("2018-03-18T12:00:00Z"), UTC);
+        service = new StatisticsService(clock, new SlidingWindowStore(60), new ObjectMapper());
+    }
+
+    @Test
+    public void testPushesCurrentStatistics() {
+        service.save(10, clock.millis() - 1_000);
+        StatisticsStream stream = new StatisticsStream(service, Duration.ofMillis(10), 10);
+
+        ServerSentEvent<StatisticsDTO> event = stream.subscribe().take(1).blockFirst(TIMEOUT);
+
+        assertEquals(StatisticsStream.EVENT, event.event());
+        assertEquals(1, event.data().getCount());
+        assertEquals(0, stream.getSubscribers());
+    }
+
+    @Test
+    public void testPushesChangedStatistics() {
+        StatisticsStream stream = new StatisticsStream(service, Duration.ofMillis(10), 10);
+
+        ServerSentEvent<StatisticsDTO> event = stream.subscribe()
+            .filter(update -> {
+                if (update.data().getCount() == 0) {
+                    service.save(10, clock.millis() - 1_000);
+                }
+                return update.data().getCount() > 0;
+            })
+            .take(1)
+            .blockFirst(TIMEOUT);
+
+        assertEquals(1, event.data().getCount());
+    }
+
+    @Test
+    public void testRejectsSubscribersOverLimit() {
+        StatisticsStream stream = new StatisticsStream(service, Duration.ofMillis(10), 1);
+        stream.subscribe().take(1).blockFirst(TIMEOUT);
+
+        Disposable subscribed = stream.subscribe().subscribe();
+        assertEquals(1, stream.getSubscribers());
+
+        assertThrows(TooManySubscribersException.class, () -> stream.subscribe().blockFirst(TIMEOUT));
+        assertEquals(1, stream.getRejectedSubscribers());
+
+        subscribed.dispose();
+        assertEquals(0, stream.getSubscribers());
+    }
+
+    @Test
+    public void testCountsSubscribersOnSubscription() {
+        StatisticsStream stream = new StatisticsStream(service, Duration.ofMillis(10), 1);
+
+        // neither takes the only slot until subscribed
+        stream.subscribe();
+        stream.subscribe();
+        assertEquals(0, stream.getSubscribers());
+
+        assertNotNull(stream.subscribe().take(1).blockFirst(TIMEOUT));
+        assertEquals(0, stream.getRejectedSubscribers());
+    }
+
+    @Test
+    public void testFreesSlotsOfCancelledSubscribers() {
+        StatisticsStream stream = new StatisticsStream(service, Duration.ofMillis(10), 2);
+        Disposable first = stream.subscribe().subscribe();
+        Disposable second = stream.subscribe().subscribe();
+
+        Disposable rejected = stream.subscribe().subscribe(event -> { }, error -> { });
+        assertEquals(2, stream.getSubscribers());
+        assertEquals(1, stream.getRejectedSubscribers());
+
+        // a rejected subscriber cancelling takes no slot back
+        rejected.dispose();
+        first.dispose();
+        assertEquals(1, stream.getSubscribers());
+
+        Disposable third = stream.subscribe().subscribe();
+        assertEquals(2, stream.getSubscribers());
+        assertEquals(1, stream.getRejectedSubscribers());
+
+        second.dispose();
+        third.dispose();
+        assertEquals(0, stream.getSubscribers());
+        assertNotNull(stream.subscribe().take(1).blockFirst(TIMEOUT));
+        assertEquals(0, stream.getSubscribers());
+    }
+}
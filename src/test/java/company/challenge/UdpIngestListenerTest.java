@@ -0,0 +1,94 @@
+package company.challenge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import company.challenge.domain.Statistics;
+import company.challenge.store.SlidingWindowStore;
+import company.challenge.store.WindowStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.time.Clock;
+
+import static java.time.Instant.parse;
+import static java.time.ZoneOffset.UTC;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UdpIngestListenerTest {
+
+    private Clock clock;
+
+    private WindowStore store;
+
+    private UdpIngestListener listener;
+
+    private double DELTA = 0.01;
+
+    @BeforeEach
+    public void setup() {
+        clock = Clock.fixed(parse("2018-03-18T12:00:00Z"), UTC);
+        store = new SlidingWindowStore(60);
+        listener = new UdpIngestListener(new StatisticsService(clock, store, new ObjectMapper()), "localhost", 0, DataSize.ofKilobytes(64));
+    }
+
+    @Test
+    public void testAcceptsRecords() {
+        long now = clock.millis();
+        ByteBuffer datagram = ByteBuffer.allocate(3 * UdpIngestListener.RECORD_SIZE);
+        datagram.putDouble(10).putLong(now - 1_000);
+        datagram.putDouble(30).putLong(now - 1_000);
+        datagram.putDouble(100).putLong(now - 61_000);
+        datagram.flip();
+
+        listener.accept(datagram);
+
+        Statistics statistics = store.aggregate(now - 60_000);
+        assertEquals(2, statistics.getCount());
+        assertEquals(40, statistics.getSum(), DELTA);
+        assertEquals(2, listener.getAcceptedRecords());
+        assertEquals(1, listener.getLateRecords());
+        assertEquals(0, listener.getMalformedRecords());
+    }
+
+    @Test
+    public void testDropsMalformedRecords() {
+        long now = clock.millis();
+        ByteBuffer truncated = ByteBuffer.allocate(UdpIngestListener.RECORD_SIZE + 8);
+        truncated.putDouble(10).putLong(now - 1_000).putDouble(20);
+        truncated.flip();
+        listener.accept(truncated);
+
+        ByteBuffer notANumber = ByteBuffer.allocate(2 * UdpIngestListener.RECORD_SIZE);
+        notANumber.putDouble(Double.NaN).putLong(now - 1_000);
+        notANumber.putDouble(5).putLong(now - 1_000);
+        notANumber.flip();
+        listener.accept(notANumber);
+
+        assertEquals(1, store.aggregate(now - 60_000).getCount());
+        assertEquals(1, listener.getAcceptedRecords());
+        assertEquals(3, listener.getMalformedRecords());
+    }
+
+    @Test
+    public void testReceivesDatagrams() throws Exception {
+        long now = clock.millis();
+        listener.start();
+        try (DatagramChannel producer = DatagramChannel.open()) {
+            ByteBuffer datagram = ByteBuffer.allocate(UdpIngestListener.RECORD_SIZE);
+            datagram.putDouble(10).putLong(now - 1_000);
+            datagram.flip();
+            producer.send(datagram, listener.getLocalAddress());
+
+            for (int i = 0; i < 100 && listener.getAcceptedRecords() == 0; i++) {
+                Thread.sleep(10);
+            }
+        } finally {
+            listener.stop();
+        }
+
+        assertEquals(1, listener.getAcceptedRecords());
+        assertFalse(listener.isRunning());
+    }
+}
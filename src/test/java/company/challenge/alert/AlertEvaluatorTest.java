@@ -0,0 +1,155 @@
+package company.challenge.alert;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import company.challenge.domain.Statistics;
+import company.challenge.store.SlidingWindowStore;
+import company.challenge.store.WindowAggregate;
+import company.challenge.store.WindowStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.Instant.parse;
+import static java.time.ZoneOffset.UTC;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AlertEvaluatorTest {
+
+    private WindowStore store;
+
+    private long now;
+
+    private final List<AlertEvent> events = new ArrayList<>();
+
+    private double DELTA = 0.01;
+
+    @BeforeEach
+    public void setup() {
+        now = Clock.fixed(parse("2018-03-18T12:00:00Z"), UTC).millis();
+        store = new SlidingWindowStore(60);
+    }
+
+    @Test
+    public void testParseRules() {
+        AlertRule named = AlertRule.parse(" spike: count > 1000 over 10s ");
+        assertEquals("spike", named.getName());
+        assertEquals("count > 1000 over 10s", named.getExpression());
+        assertEquals(1000, named.getThreshold(), DELTA);
+        assertEquals(10_000, named.getWindowMillis());
+
+        AlertRule unnamed = AlertRule.parse("avg<=5.5 over PT1M");
+        assertEquals("avg<=5.5 over PT1M", unnamed.getName());
+        assertEquals(60_000, unnamed.getWindowMillis());
+        assertTrue(unnamed.isBreached(5.5));
+        assertFalse(unnamed.isBreached(Double.NaN));
+
+        assertThrows(IllegalArgumentException.class, () -> AlertRule.parse("count > 10"));
+        assertThrows(IllegalArgumentException.class, () -> AlertRule.parse("median > 10 over 10s"));
+        assertThrows(IllegalArgumentException.class, () -> AlertRule.parse("max > ten over 10s"));
+        assertThrows(IllegalArgumentException.class, () -> AlertRule.parse("max > 10 over 0s"));
+        assertThrows(IllegalArgumentException.class, () -> AlertRule.parse(": max > 10 over 10s"));
+    }
+
+    @Test
+    public void testFiresOnceAndResolves() {
+        AlertEvaluator evaluator = evaluator("spike: count > 2 over 10s", "large: max >= 100 over 60s");
+        assertArrayEquals(new long[]{10_000, 60_000}, evaluator.getWindowMillis());
+
+        store.add(now - 20_000, 100);
+        store.add(now - 1_000, 1);
+        store.add(now - 1_000, 2);
+        store.add(now - 1_000, 3);
+
+        assertEquals(2, evaluate(evaluator, now));
+        assertEquals(2, evaluator.getFiringRules());
+        assertEquals("spike", events.get(0).getRule());
+        assertEquals(AlertEvent.FIRING, events.get(0).getState());
+        assertEquals(3, events.get(0).getValue(), DELTA);
+        assertEquals(AlertEvent.FIRING, events.get(1).getState());
+        assertEquals(100, events.get(1).getValue(), DELTA);
+
+        // still breached, nothing new to tell
+        assertEquals(0, evaluate(evaluator, now + 1_000));
+
+        // the transactions leave the 10s window, the large one is still in the 60s one
+        assertEquals(1, evaluate(evaluator, now + 10_000));
+        assertEquals("spike", events.get(2).getRule());
+        assertEquals(AlertEvent.RESOLVED, events.get(2).getState());
+        assertEquals(0, events.get(2).getValue(), DELTA);
+        assertEquals(now + 10_000, events.get(2).getTimestamp());
+        assertEquals(1, evaluator.getFiringRules());
+        assertEquals(3, evaluator.getEvents());
+    }
+
+    @Test
+    public void testEmptyWindowKeepsState() {
+        AlertEvaluator evaluator = evaluator("avg < 5 over 10s");
+        store.add(now - 1_000, 1);
+
+        assertEquals(1, evaluate(evaluator, now));
+        // no transactions left in the window, so no average to resolve on
+        assertEquals(0, evaluate(evaluator, now + 10_000));
+        assertEquals(1, evaluator.getFiringRules());
+    }
+
+    @Test
+    public void testPostsToWebhook() throws IOException, InterruptedException {
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        HttpServer webhook = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        webhook.createContext("/alerts", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                received.add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        webhook.start();
+        try {
+            WebhookAlertSink sink = new WebhookAlertSink(
+                URI.create("http://localhost:" + webhook.getAddress().getPort() + "/alerts"),
+                Duration.ofSeconds(1), new ObjectMapper());
+
+            sink.send(new AlertEvent("spike", "count > 2 over 10s", AlertEvent.FIRING, 3, 2, now));
+
+            String body = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(body);
+            assertTrue(body.contains("\"rule\":\"spike\""));
+            assertTrue(body.contains("\"state\":\"firing\""));
+            assertEquals(0, sink.getFailures());
+        } finally {
+            webhook.stop(0);
+        }
+    }
+
+    private AlertEvaluator evaluator(String... rules) {
+        List<AlertRule> parsed = new ArrayList<>();
+        for (String rule : rules) {
+            parsed.add(AlertRule.parse(rule));
+        }
+        return new AlertEvaluator(parsed, events::add);
+    }
+
+    private int evaluate(AlertEvaluator evaluator, long timestamp) {
+        long[] windowStarts = Arrays.stream(evaluator.getWindowMillis()).map(window -> timestamp - window).toArray();
+        WindowAggregate[] aggregates = store.aggregateWindows(timestamp - store.getWindowMillis(), windowStarts);
+        Statistics[] statistics = new Statistics[aggregates.length];
+        for (int i = 0; i < aggregates.length; i++) {
+            statistics[i] = aggregates[i].getStatistics();
+        }
+        return evaluator.evaluate(timestamp, statistics);
+    }
+}
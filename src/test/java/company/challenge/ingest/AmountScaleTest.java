@@ -0,0 +1,50 @@
+package company.challenge.ingest;
+
+import company.challenge.validation.InvalidAmountException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AmountScaleTest {
+
+    private final AmountScale cents = new AmountScale(2);
+
+    @Test
+    public void testToUnitsRoundsDecimalHalfEven() {
+        double[] amounts = {0, 12.3, -0.05, 1234.56, 0.125, 0.135, 0.165, -0.165, 2.5, 90071992547409.92};
+        long[] units = {0, 1230, -5, 123456, 12, 14, 16, -16, 250, 9_007_199_254_740_992L};
+        for (int i = 0; i < amounts.length; i++) {
+            assertEquals(units[i], cents.toUnits(amounts[i]), String.valueOf(amounts[i]));
+        }
+        assertEquals(3, new AmountScale(0).toUnits(2.5 + 0.5));
+        assertEquals(2, new AmountScale(0).toUnits(2.5));
+    }
+
+    @Test
+    public void testRejectInvalidAmounts() {
+        for (double amount : new double[]{Double.NaN, Double.POSITIVE_INFINITY, 1e17, -1e300}) {
+            assertThrows(InvalidAmountException.class, () -> cents.toUnits(amount), String.valueOf(amount));
+        }
+    }
+
+    @Test
+    public void testSumFallsBackToDoubleBeyondExactRange() {
+        assertEquals(new BigDecimal("1.00"), cents.toSum(0.9999999999999999, 100));
+        assertEquals(new BigDecimal("-0.05"), cents.toSum(-0.05, -5));
+        assertEquals(0, cents.getOverflows());
+
+        // beyond 2^62 units the long may have wrapped around
+        assertEquals(9.3e16, cents.toSum(9.3e16, Long.MIN_VALUE + 42));
+        assertEquals(Double.POSITIVE_INFINITY, cents.toSum(Double.POSITIVE_INFINITY, 0));
+        assertEquals(2, cents.getOverflows());
+    }
+
+    @Test
+    public void testAverage() {
+        assertEquals(new BigDecimal("0.3333333333333333"), cents.toAverage(new BigDecimal("1.00"), 3));
+        assertEquals(BigDecimal.ZERO, cents.toAverage(BigDecimal.ZERO, 0));
+        assertEquals(3.1e16, cents.toAverage(9.3e16, 3));
+    }
+}
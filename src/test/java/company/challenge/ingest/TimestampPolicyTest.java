@@ -0,0 +1,40 @@
+package company.challenge.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+
+import static java.time.Instant.parse;
+import static java.time.ZoneOffset.UTC;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimestampPolicyTest {
+
+    private final long now = Clock.fixed(parse("2018-03-18T12:00:00Z"), UTC).millis();
+
+    @Test
+    public void testRejectsLateAndFuture() {
+        TimestampPolicy policy = new TimestampPolicy(60_000, 1_000, false);
+
+        assertEquals(now - 59_999, policy.admit(now - 59_999, now));
+        assertEquals(now + 1_000, policy.admit(now + 1_000, now));
+        assertEquals(TimestampPolicy.REJECTED, policy.admit(now - 60_000, now));
+        assertEquals(TimestampPolicy.REJECTED, policy.admit(now + 1_001, now));
+
+        assertEquals(1, policy.getLateTransactions());
+        assertEquals(1, policy.getRejectedFutureTransactions());
+        assertEquals(0, policy.getClampedFutureTransactions());
+    }
+
+    @Test
+    public void testClampsFuture() {
+        TimestampPolicy policy = new TimestampPolicy(60_000, 1_000, true);
+
+        assertEquals(now + 1_000, policy.admit(now + 3_600_000, now));
+        assertEquals(TimestampPolicy.REJECTED, policy.admit(now - 61_000, now));
+
+        assertEquals(1, policy.getClampedFutureTransactions());
+        assertEquals(0, policy.getRejectedFutureTransactions());
+        assertEquals(1, policy.getLateTransactions());
+    }
+}
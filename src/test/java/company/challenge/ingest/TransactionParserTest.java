@@ -0,0 +1,147 @@
+package company.challenge.ingest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionParserTest {
+
+    private TransactionParser parser;
+
+    @BeforeEach
+    public void setup() {
+        parser = new TransactionParser();
+    }
+
+    @Test
+    public void testParseTransaction() {
+        assertTrue(parse("{\"amount\":12.3,\"timestamp\":1478192204000}"));
+        assertEquals(12.3, parser.getAmount());
+        assertEquals(1478192204000L, parser.getTimestamp());
+    }
+
+    @Test
+    public void testParseAnyFieldOrderAndWhitespace() {
+        assertTrue(parse(" {\n\t\"timestamp\" : 1478192204000 ,\r\n \"amount\" : -0.05 } \n"));
+        assertEquals(-0.05, parser.getAmount());
+        assertEquals(1478192204000L, parser.getTimestamp());
+    }
+
+    @Test
+    public void testParseNumbersLikeDouble() {
+        String[] amounts = {"0", "1000", "0.1", "123.456", "1e3", "2.5E-3", "9007199254740993",
+            "0.30000000000000004", "123456789012345678901234567890", "1e300", "4.9e-324"};
+        for (String amount : amounts) {
+            assertTrue(parse("{\"amount\":" + amount + "}"), amount);
+            assertEquals(Double.parseDouble(amount), parser.getAmount(), amount);
+        }
+    }
+
+    @Test
+    public void testParseQuotedNumbersAndNull() {
+        assertTrue(parse("{\"amount\":\"12.5\",\"timestamp\":\"1478192204000\"}"));
+        assertEquals(12.5, parser.getAmount());
+        assertEquals(1478192204000L, parser.getTimestamp());
+
+        assertTrue(parse("{\"amount\":null,\"timestamp\":null}"));
+        assertEquals(0, parser.getAmount());
+        assertEquals(0, parser.getTimestamp());
+    }
+
+    @Test
+    public void testSkipUnknownFields() {
+        assertTrue(parse("{\"id\":\"a\\\"}b\",\"tags\":[1,{\"x\":[]}],\"flag\":true,\"n\":null,"
+            + "\"amount\":5,\"rate\":-1.5e2,\"timestamp\":1}"));
+        assertEquals(5, parser.getAmount());
+        assertEquals(1, parser.getTimestamp());
+    }
+
+    @Test
+    public void testParseKey() {
+        assertTrue(parse("{\"amount\":5,\"key\":\"merchant-1\",\"timestamp\":1}"));
+        assertEquals("merchant-1", parser.getKey());
+
+        assertTrue(parse("{\"key\":\"a\\\"b\\u00e9\\n\"}"));
+        assertEquals("a\"b\u00e9\n", parser.getKey());
+
+        assertTrue(parse("{\"key\":42}"));
+        assertEquals("42", parser.getKey());
+
+        assertTrue(parse("{\"key\":null}"));
+        assertNull(parser.getKey());
+
+        assertTrue(parse("{\"amount\":5}"));
+        assertNull(parser.getKey());
+
+        assertFalse(parse("{\"key\":true}"));
+    }
+
+    @Test
+    public void testMissingFieldsDefaultToZero() {
+        assertTrue(parse("{}"));
+        assertEquals(0, parser.getAmount());
+        assertEquals(0, parser.getTimestamp());
+    }
+
+    @Test
+    public void testRejectMalformed() {
+        String[] bodies = {"", "[]", "{", "{\"amount\":}", "{\"amount\":1,}", "{\"amount\":1.}",
+            "{\"amount\":\"abc\"}", "{\"amount\":1}x", "{\"amount\" 1}", "{\"timestamp\":99999999999999999999}",
+            "{\"amount\":{}}"};
+        for (String body : bodies) {
+            assertFalse(parse(body), body);
+        }
+    }
+
+    @Test
+    public void testAmountUnits() {
+        String[] amounts = {"12.3", "-0.05", "\"7\"", "1e3", "2.5E-1", "0.125", "0.135", "-0.165", "90071992547409.93",
+            "1e-300", "null"};
+        long[] units = {1230, -5, 700, 100_000, 25, 12, 14, -16, 9_007_199_254_740_993L, 0, 0};
+        for (int i = 0; i < amounts.length; i++) {
+            assertTrue(parse("{\"amount\":" + amounts[i] + "}"), amounts[i]);
+            assertEquals(units[i], parser.getAmountUnits(2), amounts[i]);
+        }
+        assertTrue(parse("{\"timestamp\":1}"));
+        assertEquals(0, parser.getAmountUnits(2));
+    }
+
+    @Test
+    public void testAmountUnitsOutOfRange() {
+        for (String amount : new String[]{"92233720368547758.08", "1e17", "1e999999999"}) {
+            assertTrue(parse("{\"amount\":" + amount + "}"), amount);
+            assertThrows(ArithmeticException.class, () -> parser.getAmountUnits(2), amount);
+        }
+        assertTrue(parse("{\"amount\":92233720368547758.07}"));
+        assertEquals(Long.MAX_VALUE, parser.getAmountUnits(2));
+    }
+
+    @Test
+    public void testParseFromStreamLargerThanBuffer() throws IOException {
+        StringBuilder body = new StringBuilder("{\"padding\":\"");
+        for (int i = 0; i < 2000; i++) {
+            body.append('x');
+        }
+        body.append("\",\"amount\":7,\"timestamp\":42}");
+
+        assertTrue(parser.parse(new ByteArrayInputStream(body.toString().getBytes(UTF_8))));
+        assertEquals(7, parser.getAmount());
+        assertEquals(42, parser.getTimestamp());
+    }
+
+    @Test
+    public void testRejectTooLargeStream() throws IOException {
+        byte[] body = new byte[TransactionParser.MAX_BODY_SIZE + 1];
+        assertFalse(parser.parse(new ByteArrayInputStream(body)));
+    }
+
+    private boolean parse(String body) {
+        byte[] bytes = body.getBytes(UTF_8);
+        return parser.parse(bytes, 0, bytes.length);
+    }
+}
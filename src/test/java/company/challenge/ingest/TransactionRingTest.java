@@ -0,0 +1,105 @@
+package company.challenge.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionRingTest {
+
+    private double DELTA = 0.01;
+
+    @Test
+    public void testDrainsInOrder() {
+        TransactionRing ring = new TransactionRing(3);
+        assertEquals(4, ring.capacity());
+        assertTrue(ring.offer(1, 10, 1000, "a"));
+        assertTrue(ring.offer(2, 20, 2000, null));
+        assertEquals(2, ring.size());
+
+        List<String> drained = new ArrayList<>();
+        assertEquals(2, ring.drain((timestamp, amount, units, key) ->
+            drained.add(timestamp + ":" + amount + ":" + units + ":" + key), 10));
+
+        assertEquals(List.of("1:10.0:1000:a", "2:20.0:2000:null"), drained);
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.drain((timestamp, amount, units, key) -> fail("ring is empty"), 10));
+    }
+
+    @Test
+    public void testRejectsWhenFull() {
+        TransactionRing ring = new TransactionRing(2);
+        assertTrue(ring.offer(1, 10, 0, null));
+        assertTrue(ring.offer(2, 20, 0, null));
+        assertFalse(ring.offer(3, 30, 0, null));
+
+        // draining one frees its slot for the next lap
+        assertEquals(1, ring.drain((timestamp, amount, units, key) -> assertEquals(1, timestamp), 1));
+        assertTrue(ring.offer(3, 30, 0, null));
+        assertFalse(ring.offer(4, 40, 0, null));
+        assertEquals(2, ring.size());
+    }
+
+    @Test
+    public void testRejectsOnceClosed() {
+        TransactionRing ring = new TransactionRing(4);
+        assertTrue(ring.offer(1, 10, 0, null));
+        ring.close();
+        assertTrue(ring.isClosed());
+        assertFalse(ring.offer(2, 20, 0, null));
+        assertEquals(1, ring.size());
+
+        // claimed before closing, so still drained
+        assertEquals(1, ring.drain((timestamp, amount, units, key) -> assertEquals(1, timestamp), 10));
+        assertEquals(0, ring.size());
+        assertFalse(ring.offer(3, 30, 0, null));
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        TransactionRing ring = new TransactionRing(64);
+        int producers = 4;
+        int perProducer = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long producer = p;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(producer, i, 1, null)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+
+        long[] count = new long[producers];
+        double[] sum = new double[producers];
+        long expected = (long) producers * perProducer;
+        long drained = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (drained < expected && System.nanoTime() < deadline) {
+            drained += ring.drain((timestamp, amount, units, key) -> {
+                count[(int) timestamp]++;
+                sum[(int) timestamp] += amount;
+            }, 16);
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(expected, drained);
+        for (int p = 0; p < producers; p++) {
+            assertEquals(perProducer, count[p]);
+            assertEquals(perProducer * (perProducer - 1) / 2.0, sum[p], DELTA);
+        }
+        assertEquals(0, ring.size());
+    }
+}
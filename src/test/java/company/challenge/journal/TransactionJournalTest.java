@@ -0,0 +1,268 @@
+package company.challenge.journal;
+
+import company.challenge.domain.Statistics;
+import company.challenge.store.QuantileSketch;
+import company.challenge.store.SlidingWindowStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.time.Instant.parse;
+import static java.time.ZoneOffset.UTC;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionJournalTest {
+
+    private static final int SEGMENT_BYTES = 16 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private long now;
+
+    private double DELTA = 0.01;
+
+    @BeforeEach
+    public void setup() {
+        now = Clock.fixed(parse("2018-03-18T12:00:00Z"), UTC).millis();
+    }
+
+    @Test
+    public void testRecoverAfterRestart() throws IOException {
+        TransactionJournal journal = new TransactionJournal(directory, 1000, SEGMENT_BYTES);
+        journal.append(now - 1_000, 10);
+        journal.append(now - 1_000, 30);
+        journal.append(now - 70_000, 100);
+
+        Statistics batch = new Statistics();
+        batch.setCount(2);
+        batch.setSum(12);
+        batch.setMin(4);
+        batch.setMax(8);
+        long[] bins = new long[QuantileSketch.BINS];
+        bins[QuantileSketch.binOf(4)]++;
+        bins[QuantileSketch.binOf(8)]++;
+        assertTrue(journal.append(now - 2_000, batch, bins));
+        journal.close();
+
+        SlidingWindowStore store = new SlidingWindowStore(60);
+        assertEquals(2, new TransactionJournal(directory, 1000, SEGMENT_BYTES).recover(store, now - 60_000));
+
+        Statistics second = store.get(now - 1_000);
+        assertEquals(2, second.getCount());
+        assertEquals(40, second.getSum(), DELTA);
+        assertEquals(10, second.getMin(), DELTA);
+        assertEquals(30, second.getMax(), DELTA);
+        assertEquals(10, second.getP50(), 10 * QuantileSketch.RELATIVE_ACCURACY);
+
+        Statistics merged = store.get(now - 2_000);
+        assertEquals(2, merged.getCount());
+        assertEquals(12, merged.getSum(), DELTA);
+        assertEquals(4, merged.getMin(), DELTA);
+        assertEquals(8, merged.getMax(), DELTA);
+
+        assertNull(store.get(now - 70_000));
+    }
+
+    @Test
+    public void testRecoverFromSnapshotAndTail() throws IOException {
+        TransactionJournal journal = new TransactionJournal(directory, 1000, SEGMENT_BYTES);
+        journal.append(now - 50_000, 10);
+        journal.append(now - 20_000, 20);
+        journal.compact(now - 60_000);
+        journal.append(now - 20_000, 40);
+        journal.append(now - 1_000, 5);
+        journal.close();
+
+        TransactionJournal restarted = new TransactionJournal(directory, 1000, SEGMENT_BYTES);
+        restarted.compact(now - 30_000);
+
+        SlidingWindowStore store = new SlidingWindowStore(60);
+        assertEquals(2, new TransactionJournal(directory, 1000, SEGMENT_BYTES).recover(store, now - 60_000));
+        assertNull(store.get(now - 50_000));
+        assertEquals(60, store.get(now - 20_000).getSum(), DELTA);
+        assertEquals(5, store.get(now - 1_000).getSum(), DELTA);
+    }
+
+    @Test
+    public void testSkipsSegmentsLeftBehindByCrashDuringCompaction() throws IOException {
+        TransactionJournal journal = new TransactionJournal(directory, 1000, SEGMENT_BYTES);
+        journal.append(now - 20_000, 10);
+        journal.append(now - 1_000, 5);
+        journal.flush();
+
+        // a crash after the snapshot moved into place and before the segments it covers were deleted
+        Map<Path, byte[]> segments = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+            for (Path file : files) {
+                segments.put(file, Files.readAllBytes(file));
+            }
+        }
+        journal.compact(now - 60_000);
+        for (Map.Entry<Path, byte[]> segment : segments.entrySet()) {
+            Files.write(segment.getKey(), segment.getValue());
+        }
+
+        TransactionJournal restarted = new TransactionJournal(directory, 1000, SEGMENT_BYTES);
+        restarted.append(now - 1_000, 7);
+        restarted.close();
+        SlidingWindowStore store = new SlidingWindowStore(60);
+        assertEquals(2, new TransactionJournal(directory, 1000, SEGMENT_BYTES).recover(store, now - 60_000));
+        assertEquals(1, store.get(now - 20_000).getCount());
+        assertEquals(10, store.get(now - 20_000).getSum(), DELTA);
+        assertEquals(2, store.get(now - 1_000).getCount());
+
+        // compaction drops the covered segments without folding them in again
+        TransactionJournal compacted = new TransactionJournal(directory, 1000, SEGMENT_BYTES);
+        compacted.compact(now - 60_000);
+        store = new SlidingWindowStore(60);
+        new TransactionJournal(directory, 1000, SEGMENT_BYTES).recover(store, now - 60_000);
+        assertEquals(1, store.get(now - 20_000).getCount());
+        assertEquals(12, store.get(now - 1_000).getSum(), DELTA);
+
+        // once they are gone, new segments are numbered past the covered ones
+        TransactionJournal reopened = new TransactionJournal(directory, 1000, SEGMENT_BYTES);
+        reopened.append(now - 1_000, 1);
+        reopened.close();
+        store = new SlidingWindowStore(60);
+        new TransactionJournal(directory, 1000, SEGMENT_BYTES).recover(store, now - 60_000);
+        assertEquals(3, store.get(now - 1_000).getCount());
+    }
+
+    @Test
+    public void testStopsAtCorruptRecord() throws IOException {
+        TransactionJournal journal = new TransactionJournal(directory, 1000, SEGMENT_BYTES);
+        journal.append(now - 2_000, 10);
+        journal.flush();
+        journal.append(now - 1_000, 20);
+        journal.close();
+
+        Path segment;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+            segment = files.iterator().next();
+        }
+        try (FileChannel channel = FileChannel.open(segment, READ, WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+            // first bin of the second record, past the file header, the first record and the bucket fields
+            int second = Long.BYTES + buffer.getInt(Long.BYTES);
+            int bin = second + 2 * Integer.BYTES + 6 * Long.BYTES;
+            buffer.putLong(bin, (long) QuantileSketch.BINS << 48 | 1);
+        }
+
+        SlidingWindowStore store = new SlidingWindowStore(60);
+        assertEquals(1, new TransactionJournal(directory, 1000, SEGMENT_BYTES).recover(store, now - 60_000));
+        assertEquals(10, store.get(now - 2_000).getSum(), DELTA);
+        assertNull(store.get(now - 1_000));
+    }
+
+    @Test
+    public void testRecoverExactSums() throws IOException {
+        TransactionJournal journal = new TransactionJournal(directory, 1000, SEGMENT_BYTES);
+        journal.append(now - 20_000, 0.1, 10);
+        journal.append(now - 20_000, 0.2, 20);
+        Statistics batch = new Statistics();
+        batch.setCount(1);
+        batch.setSum(0.3);
+        batch.setUnits(30);
+        batch.setMin(0.3);
+        batch.setMax(0.3);
+        long[] bins = new long[QuantileSketch.BINS];
+        bins[QuantileSketch.binOf(0.3)]++;
+        journal.append(now - 1_000, batch, bins);
+        journal.append(now - 1_000, 5);
+        journal.compact(now - 60_000);
+        journal.append(now - 20_000, 0.7, 70);
+        journal.close();
+
+        SlidingWindowStore store = new SlidingWindowStore(60);
+        assertEquals(2, new TransactionJournal(directory, 1000, SEGMENT_BYTES).recover(store, now - 60_000));
+        assertEquals(100, store.get(now - 20_000).getUnits());
+        assertEquals(3, store.get(now - 20_000).getCount());
+        assertEquals(30, store.get(now - 1_000).getUnits());
+        assertEquals(5.3, store.get(now - 1_000).getSum(), DELTA);
+    }
+
+    @Test
+    public void testJournalsBucketsBeyondTheAccumulatorsOneByOne() throws IOException {
+        TransactionJournal journal = new TransactionJournal(directory, 1000, SEGMENT_BYTES);
+        // one writer thread, more buckets between two flushes than its stripe accumulates
+        for (int second = 1; second <= 10; second++) {
+            journal.append(now - second * 1_000, second);
+            journal.append(now - second * 1_000, second);
+        }
+        journal.close();
+
+        SlidingWindowStore store = new SlidingWindowStore(60);
+        assertEquals(10, new TransactionJournal(directory, 1000, SEGMENT_BYTES).recover(store, now - 60_000));
+        for (int second = 1; second <= 10; second++) {
+            assertEquals(2, store.get(now - second * 1_000).getCount());
+            assertEquals(2 * second, store.get(now - second * 1_000).getSum(), DELTA);
+        }
+    }
+
+    @Test
+    public void testConcurrentAppendsAndFlushes() throws Exception {
+        TransactionJournal journal = new TransactionJournal(directory, 1000, 1 << 20);
+        int threads = 4;
+        int perThread = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    journal.append(now - (i % 3) * 1_000, 1);
+                }
+                done.countDown();
+            });
+        }
+        while (!done.await(1, TimeUnit.MILLISECONDS)) {
+            journal.flush();
+        }
+        executor.shutdown();
+        journal.close();
+
+        SlidingWindowStore store = new SlidingWindowStore(60);
+        new TransactionJournal(directory, 1000, 1 << 20).recover(store, now - 60_000);
+        Statistics statistics = store.aggregate(now - 60_000);
+        assertEquals(threads * perThread, statistics.getCount());
+        assertEquals(threads * perThread, statistics.getSum(), DELTA);
+        assertEquals(1, statistics.getMin(), DELTA);
+        assertEquals(0, journal.getLostRecords());
+    }
+
+    @Test
+    public void testRotatesFullSegments() throws IOException {
+        TransactionJournal journal = new TransactionJournal(directory, 1000, SEGMENT_BYTES);
+        for (int i = 0; i < 10_000; i++) {
+            journal.append(now - (i % 60) * 1_000, 1);
+            if (i % 100 == 99) {
+                // a record per bucket touched since the previous flush
+                journal.flush();
+            }
+        }
+        journal.close();
+
+        SlidingWindowStore store = new SlidingWindowStore(60);
+        new TransactionJournal(directory, 1000, SEGMENT_BYTES).recover(store, now - 60_000);
+        assertEquals(10_000, store.aggregate(now - 60_000).getCount());
+        assertEquals(0, journal.getLostRecords());
+    }
+}
@@ -0,0 +1,118 @@
+package company.challenge.store;
+
+import company.challenge.domain.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.util.List;
+
+import static java.time.Instant.parse;
+import static java.time.ZoneOffset.UTC;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DimensionStoreTest {
+
+    private DimensionStore store;
+
+    private long now;
+
+    private double DELTA = 0.01;
+
+    @BeforeEach
+    public void setup() {
+        now = Clock.fixed(parse("2018-03-18T12:00:00Z"), UTC).millis();
+        store = new DimensionStore(60_000, 5_000, 3, 2);
+    }
+
+    @Test
+    public void testStatisticsPerKey() {
+        assertTrue(store.add("a", now - 1_000, 10));
+        assertTrue(store.add("a", now - 30_000, 30));
+        assertTrue(store.add("b", now - 1_000, 5));
+        assertTrue(store.add("a", now - 65_000, 100));
+
+        Statistics a = store.get("a", now - 60_000);
+        assertEquals(2, a.getCount());
+        assertEquals(40, a.getSum(), DELTA);
+        assertEquals(10, a.getMin(), DELTA);
+        assertEquals(30, a.getMax(), DELTA);
+
+        assertEquals(1, store.get("b", now - 60_000).getCount());
+        assertEquals(0, store.get("unknown", now - 60_000).getCount());
+    }
+
+    @Test
+    public void testKeyLimit() {
+        assertTrue(store.add("a", now, 1));
+        assertTrue(store.add("b", now, 1));
+        assertTrue(store.add("c", now, 1));
+
+        assertFalse(store.add("d", now, 1));
+        assertTrue(store.add("a", now, 1));
+        assertEquals(3, store.size());
+        assertEquals(1, store.getRejectedKeys());
+    }
+
+    @Test
+    public void testSweepDropsIdleKeysAndRanksByCount() {
+        store.add("idle", now - 70_000, 1);
+        store.add("a", now - 1_000, 1);
+        store.add("b", now - 1_000, 1);
+        store.add("b", now - 2_000, 1);
+        store.add("b", now - 3_000, 1);
+
+        assertEquals(1, store.sweep(now - 60_000));
+
+        assertEquals(2, store.size());
+        List<KeyedStatistics> top = store.getTop(now - 60_000);
+        assertEquals(2, top.size());
+        assertEquals("b", top.get(0).getKey());
+        assertEquals(3, top.get(0).getStatistics().getCount());
+        assertEquals("a", top.get(1).getKey());
+
+        assertTrue(store.add("idle", now, 1));
+        assertEquals(1, store.get("idle", now - 60_000).getCount());
+    }
+
+    @Test
+    public void testRanksTopKeysOnReadWithoutSweep() {
+        store.add("a", now - 1_000, 1);
+        store.add("b", now - 1_000, 1);
+        store.add("b", now - 2_000, 1);
+
+        List<KeyedStatistics> top = store.getTop(now - 60_000);
+        assertEquals(2, top.size());
+        assertEquals("b", top.get(0).getKey());
+
+        store.add("a", now, 1);
+        store.add("a", now, 1);
+        assertEquals("a", store.getTop(now - 60_000).get(0).getKey());
+        assertEquals(3, store.getTop(now - 60_000).get(0).getStatistics().getCount());
+    }
+
+    @Test
+    public void testBucketsKeepTheirBusiestKeys() {
+        // top of 1 keeps the 4 busiest keys per bucket
+        DimensionStore ranked = new DimensionStore(60_000, 5_000, 100, 1);
+        for (int key = 0; key < 20; key++) {
+            for (int i = 0; i <= key; i++) {
+                ranked.add("k" + key, now - 1_000, 1);
+            }
+        }
+        // only busy in an older bucket, still ranked over the whole window
+        for (int i = 0; i < 30; i++) {
+            ranked.add("old", now - 40_000, 1);
+        }
+
+        List<KeyedStatistics> top = ranked.getTop(now - 60_000);
+        assertEquals(1, top.size());
+        assertEquals("old", top.get(0).getKey());
+        assertEquals(30, top.get(0).getStatistics().getCount());
+
+        // once the old bucket left the window the busiest key of the newest bucket ranks first
+        top = ranked.getTop(now - 30_000);
+        assertEquals("k19", top.get(0).getKey());
+        assertEquals(20, top.get(0).getStatistics().getCount());
+    }
+}
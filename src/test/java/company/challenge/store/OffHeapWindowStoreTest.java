@@ -0,0 +1,158 @@
+package company.challenge.store;
+
+import company.challenge.domain.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+import static java.time.Instant.parse;
+import static java.time.ZoneOffset.UTC;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapWindowStoreTest {
+
+    private OffHeapWindowStore store;
+
+    private Clock clock;
+
+    private double DELTA = 0.01;
+
+    @BeforeEach
+    public void setup() {
+        clock = Clock.fixed(parse("2018-03-18T12:00:00Z"), UTC);
+        store = new OffHeapWindowStore(60_000, 1_000);
+    }
+
+    @Test
+    public void testEvictPassesEachResetBucket() {
+        long now = clock.millis();
+        store.add(now - 50_000, 10);
+        store.add(now - 50_000, 30);
+        store.add(now - 1_000, 20);
+        double[] evicted = new double[2];
+
+        assertEquals(1, store.evict(now - 10_000, (bucketKey, statistics, bins) -> {
+            evicted[0] += statistics.getSum();
+            evicted[1] += statistics.getCount();
+        }));
+
+        assertEquals(40, evicted[0], DELTA);
+        assertEquals(2, evicted[1], DELTA);
+        assertNull(store.get(now - 50_000));
+        assertEquals(20, store.get(now - 1_000).getSum(), DELTA);
+    }
+
+    @Test
+    public void testWithoutPercentiles() {
+        OffHeapWindowStore store = new OffHeapWindowStore(60_000, 1_000, 0, false);
+        long now = clock.millis();
+        store.add(now - 2_000, 10);
+        store.add(now - 1_000, 20);
+
+        assertFalse(store.hasPercentiles());
+        Statistics statistics = store.aggregate(now - 60_000);
+        assertEquals(2, statistics.getCount());
+        assertEquals(30, statistics.getSum(), DELTA);
+        assertEquals(10, statistics.getMin(), DELTA);
+        assertEquals(0, statistics.getP50(), DELTA);
+        assertEquals(20, store.get(now - 1_000).getSum(), DELTA);
+    }
+
+    @Test
+    public void testConcurrentWritersToSameBucket() throws Exception {
+        int threads = 8;
+        int perThread = 10_000;
+        long timestamp = clock.instant().minusMillis(500).toEpochMilli();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int t = 0; t < threads; t++) {
+            int amount = t + 1;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < perThread; i++) {
+                    store.add(timestamp, amount);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        Statistics statistics = store.aggregate(clock.instant().minusSeconds(60).toEpochMilli());
+        assertEquals(threads * perThread, statistics.getCount());
+        assertEquals(perThread * (threads * (threads + 1) / 2.0), statistics.getSum(), DELTA);
+        assertEquals(1, statistics.getMin(), DELTA);
+        assertEquals(threads, statistics.getMax(), DELTA);
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testConcurrentWritersRollingSameSlot() throws Exception {
+        int threads = 4;
+        int periods = 20;
+        int perPeriod = 2_000;
+        // 61 slots, so these periods all land in one slot and every newer one rolls it over
+        long first = clock.instant().toEpochMilli();
+        long lap = 61_000;
+        AtomicLongArray stored = new AtomicLongArray(periods);
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int period = 0; period < periods; period++) {
+                    for (int i = 0; i < perPeriod; i++) {
+                        if (store.add(first + period * lap, period + 1)) {
+                            stored.incrementAndGet(period);
+                        }
+                    }
+                    Thread.yield();
+                }
+            });
+        }
+        executor.execute(() -> {
+            for (int period = 0; period < periods; period++) {
+                store.aggregateWindow(first + period * lap - 60_000);
+                Thread.yield();
+            }
+        });
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        // writers of a rolled period left before the reset, so the newest bucket holds only its own writes
+        long last = first + (periods - 1) * lap;
+        Statistics statistics = store.get(last);
+        assertEquals(threads * perPeriod, stored.get(periods - 1));
+        assertEquals(threads * perPeriod, statistics.getCount());
+        assertEquals(threads * perPeriod * (double) periods, statistics.getSum(), DELTA);
+        assertEquals(periods, statistics.getMin(), DELTA);
+        assertEquals(periods, statistics.getMax(), DELTA);
+        assertEquals(1, store.size());
+        // every period that stored a write was rolled over by a newer one, except the newest
+        long storedPeriods = IntStream.range(0, periods).filter(period -> stored.get(period) > 0).count();
+        assertEquals(storedPeriods - 1, store.getOverwrittenBuckets());
+        assertFalse(store.add(first, 1));
+
+        statistics = store.aggregate(last - 60_000);
+        assertEquals(threads * perPeriod, statistics.getCount());
+        assertEquals(periods, statistics.getP50(), periods * QuantileSketch.RELATIVE_ACCURACY);
+    }
+}
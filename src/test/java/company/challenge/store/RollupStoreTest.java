@@ -0,0 +1,116 @@
+package company.challenge.store;
+
+import company.challenge.domain.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+
+import static java.time.Instant.parse;
+import static java.time.ZoneOffset.UTC;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RollupStoreTest {
+
+    private static final long MINUTE = 60_000;
+
+    private static final long HOUR = 60 * MINUTE;
+
+    private long now;
+
+    private SlidingWindowStore window;
+
+    private SlidingWindowStore minutes;
+
+    private SlidingWindowStore hours;
+
+    private RollupStore rollups;
+
+    private double DELTA = 0.01;
+
+    @BeforeEach
+    public void setup() {
+        now = Clock.fixed(parse("2018-03-18T12:00:00Z"), UTC).millis();
+        // a long window stands in for the buckets expiring one by one
+        window = new SlidingWindowStore(6 * HOUR, 1_000);
+        minutes = new SlidingWindowStore(24 * HOUR, MINUTE);
+        hours = new SlidingWindowStore(30 * 24 * HOUR, HOUR);
+        rollups = new RollupStore(window, minutes, hours);
+    }
+
+    @Test
+    public void testFoldsExpiredBucketsIntoEveryTier() {
+        window.add(now - 2 * HOUR - 1_000, 10);
+        window.add(now - 2 * HOUR - 30_000, 20);
+        window.add(now - 30_000, 40);
+
+        assertEquals(2, rollups.evict(now - MINUTE));
+        assertEquals(0, rollups.evict(now - MINUTE));
+
+        assertEquals(30, minutes.get(now - 2 * HOUR - 1_000).getSum(), DELTA);
+        assertEquals(30, hours.get(now - 2 * HOUR - 1_000).getSum(), DELTA);
+        assertNull(minutes.get(now - 30_000));
+        assertNull(window.get(now - 2 * HOUR - 1_000));
+        assertEquals(40, window.get(now - 30_000).getSum(), DELTA);
+    }
+
+    @Test
+    public void testFoldsBucketsALateWriteCreatedAgain() {
+        window.add(now - 2 * HOUR, 10);
+        rollups.evict(now - MINUTE);
+        // accepted just before the eviction run moved past it
+        window.add(now - 2 * HOUR, 20);
+
+        assertEquals(10, rollups.aggregate(now - 3 * HOUR, now).getSum(), DELTA);
+        assertEquals(1, rollups.evict(now - MINUTE));
+        assertEquals(30, minutes.get(now - 2 * HOUR).getSum(), DELTA);
+        assertEquals(30, rollups.aggregate(now - 3 * HOUR, now).getSum(), DELTA);
+        assertEquals(2, rollups.aggregate(now - 3 * HOUR, now).getCount());
+    }
+
+    @Test
+    public void testRangeAcrossTiersAndWindow() {
+        // hour tier for 08:00-11:00, minute tier for the edges, the window after the eviction
+        window.add(now - 4 * HOUR + 5 * MINUTE, 1);
+        window.add(now - 3 * HOUR - 10 * MINUTE, 2);
+        window.add(now - 2 * HOUR, 4);
+        window.add(now - HOUR - 1, 8);
+        window.add(now - HOUR + 59 * MINUTE, 16);
+        window.add(now - 30_000, 32);
+        window.add(now - 5 * HOUR, 64);
+        rollups.evict(now - MINUTE);
+
+        Statistics statistics = rollups.aggregate(now - 4 * HOUR - 5 * MINUTE, now);
+
+        assertEquals(6, statistics.getCount());
+        assertEquals(63, statistics.getSum(), DELTA);
+        assertEquals(1, statistics.getMin(), DELTA);
+        assertEquals(32, statistics.getMax(), DELTA);
+        assertEquals(4, statistics.getP50(), 4 * QuantileSketch.RELATIVE_ACCURACY);
+    }
+
+    @Test
+    public void testRangeBeforeWindowAtMinuteGranularity() {
+        window.add(now - 2 * HOUR + 10_000, 10);
+        window.add(now - 2 * HOUR + 70_000, 20);
+        rollups.evict(now - MINUTE);
+
+        // the minute holding the range start is not inside the range
+        assertEquals(20, rollups.aggregate(now - 2 * HOUR + 5_000, now).getSum(), DELTA);
+        assertEquals(30, rollups.aggregate(now - 2 * HOUR, now - 2 * HOUR + 2 * MINUTE).getSum(), DELTA);
+        assertEquals(0, rollups.aggregate(now - HOUR, now).getCount());
+    }
+
+    @Test
+    public void testRangeWithoutPercentilesInTiers() {
+        rollups = new RollupStore(window, new SlidingWindowStore(24 * HOUR, MINUTE, 0, false));
+        window.add(now - 2 * HOUR, 10);
+        window.add(now - 30_000, 20);
+        rollups.evict(now - MINUTE);
+
+        Statistics statistics = rollups.aggregate(now - 3 * HOUR, now);
+        assertEquals(2, statistics.getCount());
+        assertEquals(30, statistics.getSum(), DELTA);
+        assertEquals(0, statistics.getP50(), DELTA);
+    }
+}
@@ -0,0 +1,289 @@
+package company.challenge.store;
+
+import company.challenge.domain.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.Instant.parse;
+import static java.time.ZoneOffset.UTC;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlidingWindowStoreTest {
+
+    private SlidingWindowStore store;
+
+    private Clock clock;
+
+    private double DELTA = 0.01;
+
+    @BeforeEach
+    public void setup() {
+        clock = Clock.fixed(parse("2018-03-18T12:00:00Z"), UTC);
+        store = new SlidingWindowStore(60);
+    }
+
+    @Test
+    public void testConcurrentWritersToSameBucket() throws Exception {
+        int threads = 8;
+        int perThread = 10_000;
+        long timestamp = clock.instant().minusMillis(500).toEpochMilli();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int t = 0; t < threads; t++) {
+            int amount = t + 1;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < perThread; i++) {
+                    store.add(timestamp, amount);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        Statistics statistics = store.aggregate(clock.instant().minusSeconds(60).toEpochMilli());
+        assertEquals(threads * perThread, statistics.getCount());
+        assertEquals(perThread * (threads * (threads + 1) / 2.0), statistics.getSum(), DELTA);
+        assertEquals(1, statistics.getMin(), DELTA);
+        assertEquals(threads, statistics.getMax(), DELTA);
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testSlotReusedByNewerSecond() {
+        long old = clock.instant().minusSeconds(61).toEpochMilli();
+        long now = clock.instant().toEpochMilli();
+
+        assertTrue(store.add(old, 10));
+        assertTrue(store.add(now, 20));
+        assertFalse(store.add(old, 30));
+
+        assertNull(store.get(old));
+        assertEquals(20, store.get(now).getSum(), DELTA);
+        assertEquals(1, store.getOverwrittenBuckets());
+    }
+
+    @Test
+    public void testFutureAllowanceKeepsWindowSlots() {
+        SlidingWindowStore ahead = new SlidingWindowStore(60_000, 1_000, 5_000);
+        long oldest = clock.instant().minusSeconds(60).toEpochMilli();
+        long future = clock.instant().plusSeconds(5).toEpochMilli();
+
+        assertTrue(ahead.add(oldest, 10));
+        assertTrue(ahead.add(future, 20));
+        assertTrue(ahead.add(oldest, 30));
+
+        assertEquals(40, ahead.get(oldest).getSum(), DELTA);
+        assertEquals(60, ahead.aggregate(oldest).getSum(), DELTA);
+    }
+
+    @Test
+    public void testAggregateSkipsBucketsBeforeWindowStart() {
+        store.add(clock.instant().minusSeconds(61).toEpochMilli(), 5);
+        store.add(clock.instant().minusSeconds(60).toEpochMilli(), 10);
+        store.add(clock.instant().minusSeconds(1).toEpochMilli(), 30);
+
+        Statistics statistics = store.aggregate(clock.instant().minusSeconds(60).toEpochMilli());
+
+        assertEquals(2, statistics.getCount());
+        assertEquals(40, statistics.getSum(), DELTA);
+        assertEquals(10, statistics.getMin(), DELTA);
+        assertEquals(30, statistics.getMax(), DELTA);
+    }
+
+    @Test
+    public void testAggregateExpiresBucketsAsWindowMoves() {
+        long now = clock.instant().toEpochMilli();
+        store.add(now - 60_000, 5);
+        store.add(now - 30_000, 10);
+        store.add(now - 1_000, 30);
+
+        WindowAggregate aggregate = store.aggregateWindow(now - 60_000);
+        assertEquals(3, aggregate.getStatistics().getCount());
+        assertEquals(now - 60_000, aggregate.getOldestKey());
+        assertFalse(store.isModified());
+
+        aggregate = store.aggregateWindow(now - 59_999);
+        assertEquals(2, aggregate.getStatistics().getCount());
+        assertEquals(10, aggregate.getStatistics().getMin(), DELTA);
+        assertEquals(now - 30_000, aggregate.getOldestKey());
+
+        store.add(now - 500, 1);
+        assertTrue(store.isModified());
+
+        aggregate = store.aggregateWindow(now - 29_000);
+        assertEquals(2, aggregate.getStatistics().getCount());
+        assertEquals(31, aggregate.getStatistics().getSum(), DELTA);
+        assertEquals(1, aggregate.getStatistics().getMin(), DELTA);
+
+        // moving back re-reads every bucket
+        aggregate = store.aggregateWindow(now - 60_000);
+        assertEquals(4, aggregate.getStatistics().getCount());
+    }
+
+    @Test
+    public void testEmptyAggregate() {
+        WindowAggregate aggregate = store.aggregateWindow(clock.instant().minusSeconds(60).toEpochMilli());
+
+        assertEquals(0, aggregate.getStatistics().getCount());
+        assertEquals(Long.MAX_VALUE, aggregate.getOldestKey());
+    }
+
+    @Test
+    public void testSubSecondBuckets() {
+        SlidingWindowStore store = new SlidingWindowStore(1_500, 100);
+        long now = clock.instant().toEpochMilli();
+        store.add(now - 1_550, 1);
+        store.add(now - 1_500, 2);
+        store.add(now - 1_450, 4);
+        store.add(now - 10, 8);
+
+        assertEquals(3, store.size());
+        assertEquals(now - 1_500, store.alignToBucket(now - 1_450));
+        assertEquals(6, store.get(now - 1_450).getSum(), DELTA);
+
+        Statistics statistics = store.aggregate(now - store.getWindowMillis());
+        assertEquals(3, statistics.getCount());
+        assertEquals(14, statistics.getSum(), DELTA);
+        assertEquals(2, statistics.getMin(), DELTA);
+    }
+
+    @Test
+    public void testAggregateSeveralWindows() {
+        long now = clock.instant().toEpochMilli();
+        for (int second = 1; second <= 60; second++) {
+            store.add(now - second * 1000L, second);
+        }
+
+        WindowAggregate[] aggregates = store.aggregateWindows(now - 60_000, now - 1_000, now - 10_000, now - 60_000);
+
+        assertEquals(1, aggregates[0].getStatistics().getCount());
+        assertEquals(10, aggregates[1].getStatistics().getCount());
+        assertEquals(55, aggregates[1].getStatistics().getSum(), DELTA);
+        assertEquals(10, aggregates[1].getStatistics().getMax(), DELTA);
+        assertEquals(now - 10_000, aggregates[1].getOldestKey());
+        assertEquals(60, aggregates[2].getStatistics().getCount());
+        assertEquals(1, aggregates[2].getStatistics().getMin(), DELTA);
+    }
+
+    @Test
+    public void testQuantilesWithinRelativeAccuracy() {
+        long now = clock.instant().toEpochMilli();
+        for (int amount = 1; amount <= 1000; amount++) {
+            store.add(now - (amount % 60) * 1000L - 1, amount);
+        }
+
+        Statistics statistics = store.aggregate(now - 60_000);
+
+        double accuracy = QuantileSketch.RELATIVE_ACCURACY;
+        assertEquals(500, statistics.getP50(), 500 * accuracy);
+        assertEquals(950, statistics.getP95(), 950 * accuracy);
+        assertEquals(990, statistics.getP99(), 990 * accuracy);
+    }
+
+    @Test
+    public void testQuantilesOfSeveralWindows() {
+        long now = clock.instant().toEpochMilli();
+        for (int second = 1; second <= 60; second++) {
+            store.add(now - second * 1000L, second * 10);
+        }
+
+        WindowAggregate[] aggregates = store.aggregateWindows(now - 60_000, now - 10_000, now - 60_000);
+
+        double accuracy = QuantileSketch.RELATIVE_ACCURACY;
+        assertEquals(50, aggregates[0].getStatistics().getP50(), 50 * accuracy);
+        assertEquals(90, aggregates[0].getStatistics().getP99(), 90 * accuracy);
+        assertEquals(300, aggregates[1].getStatistics().getP50(), 300 * accuracy);
+        assertEquals(590, aggregates[1].getStatistics().getP99(), 590 * accuracy);
+
+        // expired buckets leave the histogram, changed ones replace their old bins
+        for (int i = 0; i < 3; i++) {
+            store.add(now - 1_000, 1_000);
+        }
+        Statistics statistics = store.aggregate(now - 30_000);
+        assertEquals(33, statistics.getCount());
+        assertEquals(170, statistics.getP50(), 170 * accuracy);
+        assertEquals(1_000, statistics.getP95(), 1_000 * accuracy);
+    }
+
+    @Test
+    public void testQuantilesOfNegativeAmounts() {
+        long now = clock.instant().toEpochMilli();
+        store.add(now - 3_000, -100);
+        store.add(now - 2_000, -50);
+        store.add(now - 1_000, -10);
+
+        Statistics statistics = store.aggregate(now - 60_000);
+
+        double accuracy = QuantileSketch.RELATIVE_ACCURACY;
+        assertEquals(-50, statistics.getP50(), 50 * accuracy);
+
+        for (int i = 0; i < 4; i++) {
+            store.add(now - 1_000, 0);
+        }
+        store.add(now - 1_000, 20);
+        statistics = store.aggregate(now - 60_000);
+        assertEquals(0, statistics.getP50(), DELTA);
+        assertEquals(20, statistics.getMax(), DELTA);
+        assertTrue(QuantileSketch.binOf(-0.001) < QuantileSketch.binOf(0));
+        assertTrue(QuantileSketch.binOf(0) < QuantileSketch.binOf(0.001));
+    }
+
+    @Test
+    public void testQuantilesOfMergedBucket() {
+        long now = clock.instant().toEpochMilli();
+        long[] bins = new long[QuantileSketch.BINS];
+        bins[QuantileSketch.binOf(10)] = 3;
+        Statistics merged = new Statistics();
+        merged.setSum(30);
+        merged.setCount(3);
+        merged.setMin(10);
+        merged.setMax(10);
+
+        assertTrue(store.merge(now, merged, bins));
+        store.add(now, 20);
+        store.add(now, 20);
+        store.add(now, 20);
+
+        Statistics statistics = store.get(now);
+        assertEquals(6, statistics.getCount());
+        assertEquals(10, statistics.getP50(), 10 * QuantileSketch.RELATIVE_ACCURACY);
+        assertEquals(20, statistics.getP99(), 20 * QuantileSketch.RELATIVE_ACCURACY);
+    }
+
+    @Test
+    public void testWithoutPercentiles() {
+        SlidingWindowStore store = new SlidingWindowStore(60_000, 1_000, 0, false);
+        long now = clock.instant().toEpochMilli();
+        long[] bins = new long[QuantileSketch.BINS];
+        bins[QuantileSketch.binOf(10)] = 1;
+        Statistics merged = new Statistics();
+        merged.setSum(10);
+        merged.setCount(1);
+        merged.setMin(10);
+        merged.setMax(10);
+
+        assertFalse(store.hasPercentiles());
+        assertTrue(store.merge(now, merged, bins));
+        store.add(now - 1_000, 20);
+
+        Statistics statistics = store.aggregate(now - 60_000);
+        assertEquals(2, statistics.getCount());
+        assertEquals(30, statistics.getSum(), DELTA);
+        assertEquals(0, statistics.getP50(), DELTA);
+        assertEquals(0, statistics.getP99(), DELTA);
+        store.forEachBucket(now - 60_000, (bucketKey, bucket, bucketBins) -> assertEquals(0, bucketBins.length));
+    }
+}